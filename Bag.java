@@ -0,0 +1,166 @@
+import java.util.Collection;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A Bag is an item that holds other items, possibly other bags. A bag
+ * weighs what it weighs empty plus what its contents weigh. The weight
+ * of the contents is kept as a running total: when something is put in
+ * or taken out, the change is passed up to the bag's own container, and
+ * so on up to the player carrying it, so the cost is the depth of the
+ * nesting, not the number of items.
+ *
+ * Putting an item in and taking one out lock the bag, and then each bag
+ * it is inside in turn, so players sharing a room can use the same bag.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class Bag extends Item implements ItemContainer
+{
+    private double capacity;            // most weight the bag holds
+    private ItemIndex contents;
+    private double contentsWeight;      // running total of the contents
+
+    /**
+     * Create an empty bag.
+     * @param name The name of the bag.
+     * @param description The description of the bag.
+     * @param weight The weight of the empty bag in kilograms.
+     * @param capacity The most weight the bag can hold, in kilograms.
+     */
+    public Bag(String name, String description, double weight, double capacity)
+    {
+        super(name, description, weight);
+        this.capacity = capacity;
+        contents = new ItemIndex();
+    }
+
+    /**
+     * @return The weight of the bag and everything in it, in kilograms.
+     */
+    @Override
+    public double getWeight()
+    {
+        return getEmptyWeight() + contentsWeight;
+    }
+
+    /**
+     * @return The weight of the empty bag in kilograms.
+     */
+    public double getEmptyWeight()
+    {
+        return super.getWeight();
+    }
+
+    /**
+     * @return The most weight the bag can hold, in kilograms.
+     */
+    public double getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return The weight of the bag's contents, in kilograms.
+     */
+    public double getContentsWeight()
+    {
+        return contentsWeight;
+    }
+
+    /**
+     * Check whether an item can go in the bag: it must fit, and must not
+     * be the bag itself or a bag this bag is inside.
+     * @param item The item.
+     * @return true if the item can be put in the bag.
+     */
+    public boolean canHold(Item item)
+    {
+        if (contentsWeight + item.getWeight() > capacity) {
+            return false;
+        }
+        ItemContainer container = this;
+        while (container instanceof Bag) {
+            if (container == item) {
+                return false;
+            }
+            container = ((Bag) container).getLocation();
+        }
+        return true;
+    }
+
+    /**
+     * Put an item in the bag, if it is still where the caller saw it. The
+     * item becomes the bag's; the caller still has to take it out of the
+     * container it was in before.
+     * @param item The item.
+     * @param from The place the item is expected to be in, or null.
+     * @return true if the item was put in, false if it does not fit, is
+     *         already in the bag or has been moved somewhere else.
+     */
+    public synchronized boolean putItem(Item item, ItemContainer from)
+    {
+        if (!canHold(item) || contents.contains(item) || !item.moveLocation(from, this)) {
+            return false;
+        }
+        contents.add(item);
+        contentsChanged(item.getWeight());
+        return true;
+    }
+
+    /**
+     * Take an item out of the bag.
+     * @param item The item.
+     * @return true if the item was in the bag.
+     */
+    public synchronized boolean removeItem(Item item)
+    {
+        if (!contents.remove(item)) {
+            return false;
+        }
+        item.moveLocation(this, null);
+        contentsChanged(-item.getWeight());
+        return true;
+    }
+
+    /**
+     * Finds an item in the bag by the name a player typed.
+     * @param name The item's name, in any case.
+     * @return The item, or null if there is no item with that name in it.
+     */
+    public Item findItem(String name)
+    {
+        return contents.find(name);
+    }
+
+    /**
+     * @return The items in the bag, in the order they were put in. The
+     *         collection cannot be changed.
+     */
+    public Collection<Item> getContents()
+    {
+        return contents.asCollection();
+    }
+
+    /**
+     * Add a change in weight to the contents, and pass it on to whatever
+     * holds the bag.
+     */
+    private synchronized void contentsChanged(double change)
+    {
+        double before = contentsWeight;
+        // An empty bag weighs exactly its own weight again, whatever
+        // rounding errors the additions left behind.
+        contentsWeight = contents.isEmpty() ? 0 : contentsWeight + change;
+        change = contentsWeight - before;
+        ItemContainer container = getLocation();
+        if (container instanceof Bag) {
+            ((Bag) container).contentsChanged(change);
+        }
+        else if (container instanceof Player) {
+            ((Player) container).weightChanged(change);
+        }
+    }
+}
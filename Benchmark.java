@@ -0,0 +1,329 @@
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * Benchmark measures the paths every command goes through, so that a
+ * change that makes them slower, or makes them allocate, shows up before
+ * it reaches players. Each benchmark is warmed up and then run for a
+ * number of timed iterations, and reports:
+ *
+ *     ops/s    operations per second, averaged over the iterations
+ *     +-       the spread of the iterations, as a percentage
+ *     B/op     bytes allocated on the heap per operation
+ *     gc       garbage collections during the measurement
+ *
+ * To run all benchmarks, or only those whose name contains some text:
+ *     java Benchmark
+ *     java Benchmark room.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class Benchmark
+{
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    private static final PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final com.sun.management.ThreadMXBean threads = allocationCounter();
+
+    // Results are folded into this so the JIT cannot drop the work.
+    private static volatile long sink;
+
+    private String name;
+    private LongUnaryOperator operation;    // runs one op, given its number
+    private World world;                    // closed once it has run, or null
+
+    private Benchmark(String name, LongUnaryOperator operation)
+    {
+        this.name = name;
+        this.operation = operation;
+    }
+
+    /**
+     * Run the benchmarks.
+     * @param args Optionally, text the names of the benchmarks to run must
+     *             contain.
+     */
+    public static void main(String[] args)
+    {
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.printf("%-30s %14s %7s %10s %5s%n", "Benchmark", "ops/s", "+-", "B/op", "gc");
+        for (Benchmark benchmark : createBenchmarks()) {
+            if (benchmark.name.contains(filter)) {
+                benchmark.run();
+            }
+            if (benchmark.world != null) {
+                benchmark.world.close();
+            }
+        }
+    }
+
+    /**
+     * Set up every benchmark.
+     */
+    private static List<Benchmark> createBenchmarks()
+    {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        Parser parser = new Parser(new RepeatingInputStream("go east\nlook\ntake wood sword\nback\n"),
+                                   new OutputSink(nowhere));
+        benchmarks.add(new Benchmark("parser.getCommand",
+                                     i -> parser.getCommand().getCommandWord().ordinal()));
+
+        CommandWords commandWords = new CommandWords();
+        String[] words = { "go", "look", "back", "travel", "take", "xyzzy" };
+        benchmarks.add(new Benchmark("commandWords.getCommandWord",
+                                     i -> commandWords.getCommandWord(words[(int) (i % words.length)])
+                                                      .ordinal()));
+
+        String[] typos = { "lokk", "tkae", "bcak", "xyzzy" };
+        benchmarks.add(new Benchmark("commandWords.suggest", i -> {
+            CommandWord meant = commandWords.suggest(typos[(int) (i % typos.length)]);
+            return meant != null ? meant.ordinal() : -1;
+        }));
+        // Mistyped item names in rooms with many items; the index is
+        // built on the first lookup and kept while the room is unchanged.
+        for (int items : new int[] { 10, 1000, 100_000 }) {
+            Room room = roomWithItems(items);
+            String[] names = { "Itme 7", "item " + (items / 2) + "x", "Pebbel" };
+            benchmarks.add(new Benchmark("room.suggestItem/" + items, i -> {
+                Item meant = room.suggestItem(names[(int) (i % names.length)]);
+                return meant != null ? meant.getId() : -1;
+            }));
+        }
+
+        for (int items : new int[] { 0, 10, 1000 }) {
+            Room room = roomWithItems(items);
+            benchmarks.add(new Benchmark("room.getLongDescription/" + items,
+                                         i -> room.getLongDescription().length()));
+            // A change to the room makes the next look render it again.
+            Item extra = new Item("Pebble", "A small pebble.", 0.1);
+            benchmarks.add(new Benchmark("room.renderLongDescription/" + items, i -> {
+                if ((i & 1) == 0) {
+                    room.addItem(extra);
+                }
+                else {
+                    room.removeItem(extra);
+                }
+                return room.getLongDescription().length();
+            }));
+        }
+
+        benchmarks.add(gameBenchmark("game.processCommand/go", "go east", "go west"));
+        benchmarks.add(gameBenchmark("game.processCommand/look", "look", "look"));
+        benchmarks.add(gameBenchmark("game.processCommand/back", "go east", "back"));
+
+        Room large = roomWithItems(10_000);
+        Player player = new Player(large);
+        Item item = large.findItem("Item 5000");
+        benchmarks.add(new Benchmark("player.pickUpDrop/10000", i -> {
+            boolean done = (i & 1) == 0 ? player.pickUpItem(item) : player.dropItem(item);
+            return done ? 1 : 0;
+        }));
+        // One event per player per tick; the tick's cost should grow with
+        // the players in the room, not with their square.
+        for (int crowd : new int[] { 10, 100, 5000 }) {
+            benchmarks.add(crowdBenchmark(crowd));
+        }
+        return benchmarks;
+    }
+
+    /**
+     * A benchmark in which every player in a crowded room does something
+     * and then the events are handed out: one op per event.
+     */
+    private static Benchmark crowdBenchmark(int crowd)
+    {
+        WorldGraph graph = new WorldGraph();
+        Room room = graph.addRoom("in a crowded room");
+        RoomEvents events = new RoomEvents(graph);
+        events.stop();      // ticked by the benchmark instead
+        Player[] players = new Player[crowd];
+        for (int i = 0; i < crowd; i++) {
+            players[i] = new Player(room);
+            players[i].setName("Player " + i);
+            room.enter(players[i]);
+        }
+        OutputSink discard = new OutputSink(OutputStream.nullOutputStream());
+        return new Benchmark("roomEvents.crowd/" + crowd, i -> {
+            int player = (int) (i % crowd);
+            events.publish(room, players[player], "Player waves.");
+            if (player == crowd - 1) {
+                events.tick();
+                for (Player reader : players) {
+                    reader.getInbox().readTo(reader, discard);
+                }
+                discard.clear();
+            }
+            return player;
+        });
+    }
+
+    /**
+     * A benchmark that runs two commands in turn in a game on the campus.
+     */
+    private static Benchmark gameBenchmark(String name, String first, String second)
+    {
+        World world = new World();
+        Game game = new Game(world, new ByteArrayInputStream(new byte[0]), nowhere);
+        game.getTimer().cancel();
+        CommandTokenizer tokenizer = new CommandTokenizer(new CommandWords());
+        Command[] commands = { tokenizer.tokenize(first), tokenizer.tokenize(second) };
+        Benchmark benchmark = new Benchmark(name, i -> game.processCommand(commands[(int) (i & 1)]) ? 1 : 0);
+        benchmark.world = world;
+        return benchmark;
+    }
+
+    /**
+     * @return A room, with exits, holding a number of items.
+     */
+    private static Room roomWithItems(int items)
+    {
+        WorldGraph graph = new WorldGraph();
+        Room room = graph.addRoom("in a benchmark");
+        room.setExit(Direction.NORTH, graph.addRoom("north of the benchmark"));
+        room.setExit(Direction.EAST, graph.addRoom("east of the benchmark"));
+        for (int i = 0; i < items; i++) {
+            room.addItem(new Item("Item " + i, "Item number " + i + ".", 0.5));
+        }
+        return room;
+    }
+
+    /**
+     * Warm up, measure and print the results.
+     */
+    private void run()
+    {
+        long op = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            op = iterate(op, new long[1]);
+        }
+
+        double[] rates = new double[ITERATIONS];
+        long ops = 0;
+        long gcBefore = collections();
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long[] nanos = new long[1];
+            long start = op;
+            op = iterate(op, nanos);
+            ops += op - start;
+            rates[i] = (op - start) * 1e9 / nanos[0];
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        long gcs = collections() - gcBefore;
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate / ITERATIONS;
+        }
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / ITERATIONS;
+        }
+        String bytesPerOp = allocatedBefore < 0 ? "n/a" : String.format("%.1f", (double) allocated / ops);
+        System.out.printf("%-30s %,14.0f %6.1f%% %10s %5d%n",
+                          name, mean, 100 * Math.sqrt(variance) / mean, bytesPerOp, gcs);
+    }
+
+    /**
+     * Run operations for one iteration, checking the clock every batch.
+     * @param op The number of the first operation.
+     * @param nanos Receives the time the iteration took.
+     * @return The number of the next operation.
+     */
+    private long iterate(long op, long[] nanos)
+    {
+        long result = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            for (int i = 0; i < 1024; i++) {
+                result += operation.applyAsLong(op++);
+            }
+            now = System.nanoTime();
+        } while (now - start < ITERATION_NANOS);
+        nanos[0] = now - start;
+        sink += result;
+        return op;
+    }
+
+    /**
+     * @return The bytes this thread has allocated so far, or -1 if the
+     *         JVM cannot tell.
+     */
+    private static long allocatedBytes()
+    {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * @return The number of garbage collections so far.
+     */
+    private static long collections()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            if (counter.isThreadAllocatedMemorySupported()) {
+                counter.setThreadAllocatedMemoryEnabled(true);
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An input stream that plays the same text over and over, without
+     * allocating, so a parser can be fed for as long as a benchmark runs.
+     */
+    private static class RepeatingInputStream extends InputStream
+    {
+        private byte[] text;
+        private int position;
+
+        RepeatingInputStream(String text)
+        {
+            this.text = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read()
+        {
+            int b = text[position];
+            position = (position + 1) % text.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+        {
+            int count = Math.min(length, text.length - position);
+            System.arraycopy(text, position, buffer, offset, count);
+            position = (position + count) % text.length;
+            return count;
+        }
+    }
+}
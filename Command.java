@@ -1,3 +1,4 @@
+
 /**
  * This class is part of the "World of Zuul" application. 
  * "World of Zuul" is a very simple, text based adventure game.  
@@ -12,6 +13,8 @@
  * known) then the CommandWord is UNKNOWN.
  *
  * If the command had only one word, then the second word is <null>.
+ * An UNKNOWN command remembers the word that was typed, so that the
+ * player can be told which command they probably meant.
  * 
  * @author  Omar Malik
  * @version 2023.10.18
@@ -21,6 +24,7 @@ public class Command
 {
     private CommandWord commandWord;
     private String secondWord;
+    private String typedWord;
 
     /**
      * Create a command object. First and second words must be supplied, but
@@ -35,6 +39,19 @@ public class Command
         this.secondWord = secondWord;
     }
 
+    /**
+     * Create a command for a word that is not a command word.
+     * @param typedWord The word that was typed.
+     * @param secondWord The second word of the command. May be null.
+     * @return An UNKNOWN command.
+     */
+    public static Command unknown(String typedWord, String secondWord)
+    {
+        Command command = new Command(CommandWord.UNKNOWN, secondWord);
+        command.typedWord = typedWord;
+        return command;
+    }
+
     /**
      * Return the command word (the first word) of this command.
      * @return The command word.
@@ -53,6 +70,15 @@ public class Command
         return secondWord;
     }
 
+    /**
+     * @return The word typed in place of a command word, for an UNKNOWN
+     * command. Returns null if it is not known, e.g. for an empty line.
+     */
+    public String getTypedWord()
+    {
+        return typedWord;
+    }
+
     /**
      * @return true if this command was not understood.
      */
@@ -69,23 +95,15 @@ public class Command
         return (secondWord != null);
     }
     
-    /**
-     * Execute the "look" command to print the description of the current room.
-     * @param currentRoom The current room in the game.
-     */
-    public void executeLook(Room currentRoom)
-    {
-    System.out.println(currentRoom.getLongDescription());
-    }
-    
     /**
      * Execute the "eat" command, allowing the player to consume items or food in the game.
      * This method handles the player's request to eat something and provides 
      * an appropriate response.
+     * @param out The sink to print to.
      */
-    public void executeEat() {
+    public void executeEat(OutputSink out) {
     // Add logic here for eating, for example:
-    System.out.println("You have eaten something dirty.");
+    out.println("You have eaten something dirty.");
     }
 }
 
@@ -0,0 +1,278 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A CommandJournal records every command a session processes, so that the
+ * session can be rebuilt after a restart. Commands are appended to a
+ * journal file in batches. Every so many commands a snapshot of the
+ * session is written (see SessionSnapshot) and a new journal segment is
+ * started, so recovering a session means loading the latest snapshot and
+ * replaying at most one segment, however long the session has been
+ * running.
+ *
+ * For a session "s" the journal directory holds:
+ *
+ *     s.snapshot       the latest snapshot and the command count it covers
+ *     s.N.journal      commands processed after the first N
+ *
+ * Commands still waiting in the current batch when the process dies are
+ * lost; the batch size trades that window against the number of writes.
+ * A batch is forced to the disk before the next command is read, and a
+ * snapshot before it replaces the old one, so what has been written
+ * survives a crash of the machine too.
+ *
+ * A session that quit is not brought back: replaying stops at a quit,
+ * and the quit is dropped from the journal so the session can go on.
+ * Replayed commands run on the shard that owns the player's room, like
+ * the commands of a live session. Since the world is shared, a replayed
+ * command can turn out differently than it did the first time (an item
+ * may have been taken by someone else in the meantime).
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class CommandJournal
+{
+    /** Commands collected before they are written to the journal. */
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    /** Commands between two snapshots. */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
+    // Command words by the string they are recorded as.
+    private static final HashMap<String, CommandWord> wordsByName = createWordsByName();
+
+    private Game game;
+    private Path directory;
+    private String sessionId;
+    private int batchSize;
+    private int snapshotInterval;
+
+    private long sequence;          // commands processed in total
+    private long segmentStart;      // sequence at which the segment starts
+    private FileChannel segment;
+    private ByteArrayOutputStream batch;
+    private DataOutputStream batchOut;
+    private int batched;
+
+    /**
+     * Open the journal of a session, with the default batch size and
+     * snapshot interval. If the journal already holds a session, the game
+     * is first brought to the state it was in.
+     * @param game A new session on the world the journal was written on.
+     * @param directory The directory the journal is kept in.
+     * @param sessionId The name of the session.
+     * @return The journal, ready to record further commands.
+     */
+    public static CommandJournal open(Game game, Path directory, String sessionId)
+        throws IOException
+    {
+        return open(game, directory, sessionId, DEFAULT_BATCH_SIZE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Open the journal of a session. If the journal already holds a
+     * session, the game is first brought to the state it was in.
+     * @param game A new session on the world the journal was written on.
+     * @param directory The directory the journal is kept in.
+     * @param sessionId The name of the session.
+     * @param batchSize The number of commands written to the journal at once.
+     * @param snapshotInterval The number of commands between two snapshots.
+     * @return The journal, ready to record further commands.
+     */
+    public static CommandJournal open(Game game, Path directory, String sessionId,
+                                      int batchSize, int snapshotInterval)
+        throws IOException
+    {
+        CommandJournal journal = new CommandJournal(game, directory, sessionId,
+                                                    batchSize, snapshotInterval);
+        journal.recover();
+        return journal;
+    }
+
+    private CommandJournal(Game game, Path directory, String sessionId,
+                           int batchSize, int snapshotInterval)
+    {
+        this.game = game;
+        this.directory = directory;
+        this.sessionId = sessionId;
+        this.batchSize = batchSize;
+        this.snapshotInterval = snapshotInterval;
+        batch = new ByteArrayOutputStream(batchSize * 16);
+        batchOut = new DataOutputStream(batch);
+    }
+
+    /**
+     * Record a command the session has just processed.
+     * @param command The command.
+     */
+    public void record(Command command) throws IOException
+    {
+        batchOut.writeUTF(command.getCommandWord().toString());
+        batchOut.writeBoolean(command.hasSecondWord());
+        if (command.hasSecondWord()) {
+            batchOut.writeUTF(command.getSecondWord());
+        }
+        sequence++;
+        batched++;
+
+        if (sequence - segmentStart >= snapshotInterval) {
+            // The snapshot covers everything still in the batch.
+            writeSnapshot();
+        }
+        else if (batched >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the commands collected so far to the journal file.
+     */
+    public void flush() throws IOException
+    {
+        if (batched > 0) {
+            segment.write(ByteBuffer.wrap(batch.toByteArray()));
+            segment.force(false);
+            batch.reset();
+            batched = 0;
+        }
+    }
+
+    /**
+     * Write any remaining commands and close the journal file.
+     */
+    public void close() throws IOException
+    {
+        flush();
+        segment.close();
+    }
+
+    /**
+     * @return The number of commands the session has processed in total.
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Bring the game to the state recorded in the journal: load the
+     * snapshot, then replay the segment that follows it.
+     */
+    private void recover() throws IOException
+    {
+        Files.createDirectories(directory);
+        Path snapshotFile = directory.resolve(sessionId + ".snapshot");
+        if (Files.exists(snapshotFile)) {
+            DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(snapshotFile)));
+            segmentStart = in.readLong();
+            SessionSnapshot.read(game, in);
+        }
+        sequence = segmentStart;
+
+        Path segmentFile = segmentFile(segmentStart);
+        long validLength = 0;
+        if (Files.exists(segmentFile)) {
+            byte[] records = Files.readAllBytes(segmentFile);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(records));
+            try {
+                while (in.available() > 0) {
+                    CommandWord word = wordsByName.getOrDefault(in.readUTF(), CommandWord.UNKNOWN);
+                    String secondWord = in.readBoolean() ? in.readUTF() : null;
+                    if (word == CommandWord.QUIT) {
+                        // The session ended here; the quit and anything
+                        // after it are cut off below.
+                        break;
+                    }
+                    game.replay(new Command(word, secondWord));
+                    sequence++;
+                    validLength = records.length - in.available();
+                }
+            }
+            catch (EOFException e) {
+                // The last record was only partly written; it is dropped.
+            }
+        }
+
+        segment = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segment.truncate(validLength);
+        segment.position(validLength);
+    }
+
+    /**
+     * Write a snapshot of the session and start a new journal segment.
+     * The snapshot is forced to the disk and then replaces the old one in
+     * a single rename, so a crash leaves either the old snapshot and
+     * segment or the new ones.
+     */
+    private void writeSnapshot() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(sequence);
+        SessionSnapshot.write(game, out);
+
+        Path snapshotFile = directory.resolve(sessionId + ".snapshot");
+        Path temporary = directory.resolve(sessionId + ".snapshot.tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                 StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(ByteBuffer.wrap(bytes.toByteArray()));
+            file.force(true);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        segment.close();
+        Files.deleteIfExists(segmentFile(segmentStart));
+        segmentStart = sequence;
+        segment = FileChannel.open(segmentFile(segmentStart), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        batch.reset();
+        batched = 0;
+    }
+
+    /**
+     * Force the journal directory to the disk, so that a rename in it
+     * survives a crash. Not every system can open a directory; there the
+     * rename is as safe as the system makes it.
+     */
+    private void forceDirectory()
+    {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+        catch (IOException e) {
+            // Directories cannot be opened on this system.
+        }
+    }
+
+    private Path segmentFile(long start)
+    {
+        return directory.resolve(sessionId + "." + start + ".journal");
+    }
+
+    private static HashMap<String, CommandWord> createWordsByName()
+    {
+        HashMap<String, CommandWord> words = new HashMap<>();
+        for (CommandWord word : CommandWord.values()) {
+            words.put(word.toString(), word);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,211 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * CommandMetrics counts what the sessions of this JVM do: for every
+ * command word, how often it was executed and how long it took, plus how
+ * many commands were not understood, how many rooms players entered and
+ * how many items they moved. Recording never locks and never allocates:
+ * counters are LongAdders, and latencies go into a LatencyHistogram per
+ * command word, which is a single atomic increment.
+ *
+ * The metrics can be read with the "stats" command, or over JMX under
+ * the name zuul:type=CommandMetrics. The shared metrics are registered
+ * with JMX when they are first asked for; if that fails (the name is
+ * taken, or JMX is not allowed), a warning is logged and the metrics are
+ * still counted, only not visible over JMX.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class CommandMetrics implements CommandMetricsMBean
+{
+    private static final CommandWord[] commandWords = CommandWord.values();
+    private static final String MBEAN_NAME = "zuul:type=CommandMetrics";
+    private static final CommandMetrics shared = new CommandMetrics();
+    private static volatile ObjectName registered;  // null when not registered
+    private static boolean triedToRegister;
+
+    private LatencyHistogram[] latencies;   // by command word ordinal
+    private LongAdder[] counts;             // by command word ordinal
+    private LongAdder roomsEntered;
+    private LongAdder itemsMoved;
+
+    /**
+     * @return The metrics shared by all sessions in this JVM.
+     */
+    public static CommandMetrics getShared()
+    {
+        if (registered == null) {
+            register();
+        }
+        return shared;
+    }
+
+    /**
+     * Create a set of metrics with nothing counted yet.
+     */
+    public CommandMetrics()
+    {
+        latencies = new LatencyHistogram[commandWords.length];
+        counts = new LongAdder[commandWords.length];
+        for (int i = 0; i < commandWords.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            counts[i] = new LongAdder();
+        }
+        roomsEntered = new LongAdder();
+        itemsMoved = new LongAdder();
+    }
+
+    /**
+     * Count an executed command.
+     * @param word The command's word; UNKNOWN counts as an error.
+     * @param nanos How long it took to execute.
+     */
+    public void commandExecuted(CommandWord word, long nanos)
+    {
+        counts[word.ordinal()].increment();
+        latencies[word.ordinal()].record(nanos);
+    }
+
+    /**
+     * Count a player entering a room.
+     */
+    public void roomEntered()
+    {
+        roomsEntered.increment();
+    }
+
+    /**
+     * Count a player moving an item: taking, dropping or putting it away.
+     */
+    public void itemMoved()
+    {
+        itemsMoved.increment();
+    }
+
+    /**
+     * @param word A command word.
+     * @return The number of times commands with that word were executed.
+     */
+    public long getCount(CommandWord word)
+    {
+        return counts[word.ordinal()].sum();
+    }
+
+    /**
+     * @param word A command word.
+     * @return The latencies of the commands with that word, in nanoseconds.
+     */
+    public LatencyHistogram getLatencies(CommandWord word)
+    {
+        return latencies[word.ordinal()];
+    }
+
+    public long getCommandCount()
+    {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long getErrorCount()
+    {
+        return getCount(CommandWord.UNKNOWN);
+    }
+
+    public long getRoomsEntered()
+    {
+        return roomsEntered.sum();
+    }
+
+    public long getItemsMoved()
+    {
+        return itemsMoved.sum();
+    }
+
+    public long getLatencyNanos(String commandWord, double percentile)
+    {
+        for (CommandWord word : commandWords) {
+            if (word.toString().equals(commandWord)) {
+                return latencies[word.ordinal()].getPercentile(percentile);
+            }
+        }
+        throw new IllegalArgumentException("unknown command word: " + commandWord);
+    }
+
+    public String getReport()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-10s %10s %10s %10s %10s%n", "command", "count", "p50 us", "p99 us",
+                                    "p999 us"));
+        for (CommandWord word : commandWords) {
+            long count = getCount(word);
+            if (count > 0) {
+                LatencyHistogram histogram = latencies[word.ordinal()];
+                report.append(String.format("%-10s %,10d %10.1f %10.1f %10.1f%n", word, count,
+                                            histogram.getPercentile(50) / 1e3,
+                                            histogram.getPercentile(99) / 1e3,
+                                            histogram.getPercentile(99.9) / 1e3));
+            }
+        }
+        report.append(String.format("%,d commands, %,d not understood, %,d rooms entered, %,d items moved",
+                                    getCommandCount(), getErrorCount(), getRoomsEntered(),
+                                    getItemsMoved()));
+        return report.toString();
+    }
+
+    /**
+     * Make the shared metrics visible over JMX, once. A failure is logged,
+     * not thrown: the game runs on without JMX.
+     */
+    private static synchronized void register()
+    {
+        if (triedToRegister) {
+            return;
+        }
+        triedToRegister = true;
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(shared, name);
+            registered = name;
+        }
+        catch (JMException | SecurityException e) {
+            System.getLogger(CommandMetrics.class.getName())
+                .log(System.Logger.Level.WARNING, "command metrics are not visible over JMX", e);
+        }
+    }
+
+    /**
+     * Remove the shared metrics from JMX, e.g. when the server shuts down.
+     * They are registered again if they are asked for later.
+     */
+    public static synchronized void unregister()
+    {
+        ObjectName name = registered;
+        triedToRegister = false;
+        if (name == null) {
+            return;
+        }
+        registered = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException | SecurityException e) {
+            System.getLogger(CommandMetrics.class.getName())
+                .log(System.Logger.Level.WARNING, "cannot remove command metrics from JMX", e);
+        }
+    }
+}
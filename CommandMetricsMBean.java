@@ -0,0 +1,44 @@
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The management interface of CommandMetrics: what JMX tools such as
+ * jconsole show under zuul:type=CommandMetrics.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public interface CommandMetricsMBean
+{
+    /**
+     * @return The number of commands executed.
+     */
+    long getCommandCount();
+
+    /**
+     * @return The number of commands that were not understood.
+     */
+    long getErrorCount();
+
+    /**
+     * @return The number of times a player entered a room.
+     */
+    long getRoomsEntered();
+
+    /**
+     * @return The number of times a player moved an item.
+     */
+    long getItemsMoved();
+
+    /**
+     * @return A table of the counts and latencies of each command word.
+     */
+    String getReport();
+
+    /**
+     * @param commandWord A command word, e.g. "go".
+     * @param percentile A percentile, e.g. 99.9.
+     * @return The latency of that command at that percentile, in nanoseconds.
+     */
+    long getLatencyNanos(String commandWord, double percentile);
+}
@@ -0,0 +1,148 @@
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The tokenizer splits one line of input into a command word and an
+ * optional second word, working directly on the characters of the line.
+ * No substrings are made for the command word, and commands without a
+ * second word are shared, pre-built Command objects, so most input lines
+ * are turned into commands without allocating anything.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class CommandTokenizer
+{
+    // One shared command without a second word for every command word.
+    private static final Command[] plainCommands = createPlainCommands();
+
+    private CommandWords commands;  // holds all valid command words
+
+    /**
+     * Create a tokenizer recognising the given command words.
+     * @param commands The valid command words.
+     */
+    public CommandTokenizer(CommandWords commands)
+    {
+        this.commands = commands;
+    }
+
+    /**
+     * Turn a line of input into a command. Only the first two words are
+     * looked at; the rest of the line is ignored. The exception are
+     * commands naming an item ("take Wood Sword", "where is the sword"),
+     * whose second word is the rest of the line.
+     * @param line The input line.
+     * @return The command. An empty line gives an UNKNOWN command.
+     */
+    public Command tokenize(CharSequence line)
+    {
+        int length = line.length();
+        int start1 = skipSpaces(line, 0, length);
+        int end1 = skipWord(line, start1, length);
+        int start2 = skipSpaces(line, end1, length);
+        int end2 = skipWord(line, start2, length);
+
+        CommandWord word = commands.getCommandWord(line, start1, end1);
+        if (word == CommandWord.UNKNOWN && start1 < end1) {
+            // Keep what was typed, to suggest what may have been meant.
+            return Command.unknown(line.subSequence(start1, end1).toString(),
+                                   start2 < end2 ? line.subSequence(start2, end2).toString() : null);
+        }
+        if (start2 == end2) {
+            return plainCommand(word);
+        }
+
+        switch (word) {
+            case LOOK:
+                // "look" ignores anything that follows it.
+                return plainCommand(word);
+
+            case TAKE:
+            case DROP:
+            case PUT:
+            case FIND:
+            case WHERE:
+                end2 = trimmedEnd(line, start2, length);
+                break;
+
+            case OPEN_TRAPDOOR:
+            case CLOSE_TRAPDOOR:
+                if (regionEqualsIgnoreCase(line, start2, end2, "trapdoor")) {
+                    return plainCommand(word);
+                }
+                break;
+
+            default:
+                break;
+        }
+        return new Command(word, line.subSequence(start2, end2).toString());
+    }
+
+    /**
+     * @return The shared command for a command word with no second word.
+     */
+    public static Command plainCommand(CommandWord word)
+    {
+        return plainCommands[word.ordinal()];
+    }
+
+    /**
+     * @return The index of the first non-space character at or after start.
+     */
+    private static int skipSpaces(CharSequence line, int start, int end)
+    {
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @return The index just after the word starting at start.
+     */
+    private static int skipWord(CharSequence line, int start, int end)
+    {
+        while (start < end && !Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @return The index just after the last non-space character before end.
+     */
+    private static int trimmedEnd(CharSequence line, int start, int end)
+    {
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Compare part of a line to a lower case word, ignoring case.
+     */
+    static boolean regionEqualsIgnoreCase(CharSequence line, int start, int end, String word)
+    {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(line.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Command[] createPlainCommands()
+    {
+        CommandWord[] words = CommandWord.values();
+        Command[] plain = new Command[words.length];
+        for (CommandWord word : words) {
+            plain[word.ordinal()] = new Command(word, null);
+        }
+        return plain;
+    }
+}
@@ -10,7 +10,9 @@ public enum CommandWord
     // A value for each command word along with its
     // corresponding user interface string.
     GO("go"), QUIT("quit"), HELP("help"), UNKNOWN("?"), LOOK("look"), EAT("eat"), 
-    BACK("back"), CLOSE_TRAPDOOR("close"),OPEN_TRAPDOOR("open");
+    BACK("back"), CLOSE_TRAPDOOR("close"),OPEN_TRAPDOOR("open"), TRAVEL("travel"),
+    TAKE("take"), DROP("drop"), FIND("find"), WHERE("where"),
+    PUT("put"), INVENTORY("inventory"), STATS("stats");
     
     // The command string.
     private String commandString;
@@ -1,11 +1,12 @@
-import java.util.HashMap;
-
 /**
  * This class is part of the "World of Zuul" application. 
  * "World of Zuul" is a very simple, text based adventure game.
  * 
  * This class holds an enumeration of all command words known to the game.
- * It is used to recognise commands as they are typed in.
+ * It is used to recognise commands as they are typed in. Command words are
+ * matched ignoring case, and any unambiguous prefix of a command word is
+ * accepted too ("l" for "look"). For a word that is not recognised, the
+ * closest command word can be suggested ("lokk" may mean "look").
  *
  * @author  Omar Malik
  * @version 2023.10.18
@@ -13,16 +14,21 @@ import java.util.HashMap;
 
 public class CommandWords
 {
-    // A mapping between a command word and the CommandWord
-    // associated with it.
-    private HashMap<String, CommandWord> validCommands;
+    // The list printed by showAll, the same for every session.
+    private static final String commandList = createCommandList();
+    // The command words by their spelling, to suggest one for a typo.
+    private static final SuggestionTrie<CommandWord> suggestions = createSuggestions();
+
+    // A mapping between a command word (or a prefix of one) and the
+    // CommandWord associated with it.
+    private WordTrie<CommandWord> validCommands;
 
     /**
      * Constructor - initialise the command words.
      */
     public CommandWords()
     {
-        validCommands = new HashMap<>();
+        validCommands = new WordTrie<>();
         for(CommandWord command : CommandWord.values()) {
             if(command != CommandWord.UNKNOWN) {
                 validCommands.put(command.toString(), command);
@@ -38,7 +44,20 @@ public class CommandWords
      */
     public CommandWord getCommandWord(String commandWord)
     {
-        CommandWord command = validCommands.get(commandWord);
+        return getCommandWord(commandWord, 0, commandWord.length());
+    }
+
+    /**
+     * Find the CommandWord spelled by part of a line of input. No String
+     * is created for the lookup.
+     * @param text The text containing the word.
+     * @param start The index of the first character of the word.
+     * @param end The index just after the last character of the word.
+     * @return The CommandWord, or UNKNOWN if it is not a valid command word.
+     */
+    public CommandWord getCommandWord(CharSequence text, int start, int end)
+    {
+        CommandWord command = validCommands.get(text, start, end);
         if(command != null) {
             return command;
         }
@@ -53,17 +72,52 @@ public class CommandWords
      */
     public boolean isCommand(String aString)
     {
-        return validCommands.containsKey(aString);
+        return validCommands.get(aString) != null;
+    }
+
+    /**
+     * Find the command word a player probably meant when they typed a
+     * word that is not one.
+     * @param typed The word the player typed.
+     * @return The closest command word, or null if none is close enough.
+     */
+    public CommandWord suggest(String typed)
+    {
+        return suggestions.closest(typed);
     }
 
     /**
-     * Print all valid commands to System.out.
+     * Print all valid commands.
+     * @param out The sink to print to.
      */
-    public void showAll() 
+    public void showAll(OutputSink out) 
     {
-        System.out.println("Available commands are:");
-        for (String command : validCommands.keySet()) {
-            System.out.println("- " + command);
+        out.print(commandList);
+    }
+
+    /**
+     * Render the list of commands once, in declaration order.
+     */
+    private static String createCommandList()
+    {
+        StringBuilder list = new StringBuilder("Available commands are:");
+        list.append(System.lineSeparator());
+        for (CommandWord command : CommandWord.values()) {
+            if (command != CommandWord.UNKNOWN) {
+                list.append("- ").append(command).append(System.lineSeparator());
+            }
+        }
+        return list.toString();
+    }
+
+    private static SuggestionTrie<CommandWord> createSuggestions()
+    {
+        SuggestionTrie<CommandWord> tree = new SuggestionTrie<>();
+        for (CommandWord command : CommandWord.values()) {
+            if (command != CommandWord.UNKNOWN) {
+                tree.add(command.toString(), command);
+            }
         }
+        return tree;
     }
 }
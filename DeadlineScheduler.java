@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A DeadlineScheduler keeps track of time limits for many game sessions
+ * with a single background thread. Deadlines are kept in a hashed timing
+ * wheel: a ring of buckets, one per tick, where a deadline is filed in
+ * the bucket of the tick it expires on. Scheduling and cancelling are
+ * constant time no matter how many deadlines are pending, and the wheel
+ * only ever looks at the one bucket whose tick has just come round.
+ *
+ * Deadlines are only as precise as the tick length, which is fine for
+ * game time limits measured in minutes.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class DeadlineScheduler
+{
+    private static final DeadlineScheduler shared = new DeadlineScheduler(100, 512);
+
+    private final long tickMillis;
+    private final Deadline[] wheel;     // head of the list in each bucket
+    private final int mask;
+    private final long startNanos;
+    private long currentTick;           // last tick that has been processed
+
+    /**
+     * @return The scheduler shared by all sessions in this JVM.
+     */
+    public static DeadlineScheduler getShared()
+    {
+        return shared;
+    }
+
+    /**
+     * Create a scheduler and start its thread.
+     * @param tickMillis The length of one tick in milliseconds.
+     * @param buckets The number of buckets in the wheel; rounded up to a
+     *                power of two.
+     */
+    public DeadlineScheduler(long tickMillis, int buckets)
+    {
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+        wheel = new Deadline[size];
+        mask = size - 1;
+        startNanos = System.nanoTime();
+
+        Thread worker = new Thread(this::run, "deadline-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedule an action to run once a delay has passed.
+     * @param delayMillis The delay in milliseconds.
+     * @param action The action to run. It runs on the scheduler's thread,
+     *               so it must be short.
+     * @return The deadline, which can be cancelled, paused or extended.
+     */
+    public Deadline schedule(long delayMillis, Runnable action)
+    {
+        Deadline deadline = new Deadline(action);
+        synchronized (this) {
+            insert(deadline, elapsedMillis() + delayMillis);
+        }
+        return deadline;
+    }
+
+    /**
+     * @return Milliseconds since the scheduler was started.
+     */
+    private long elapsedMillis()
+    {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * File a deadline in the bucket of the tick it expires on.
+     * Must be called while holding the lock.
+     */
+    private void insert(Deadline deadline, long expiryMillis)
+    {
+        long tick = Math.max((expiryMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        deadline.expiryTick = tick;
+        deadline.state = Deadline.WAITING;
+        int bucket = (int) (tick & mask);
+        deadline.next = wheel[bucket];
+        if (deadline.next != null) {
+            deadline.next.prev = deadline;
+        }
+        deadline.prev = null;
+        wheel[bucket] = deadline;
+    }
+
+    /**
+     * Take a deadline out of its bucket. Must be called while holding the lock.
+     */
+    private void unlink(Deadline deadline)
+    {
+        if (deadline.prev != null) {
+            deadline.prev.next = deadline.next;
+        }
+        else {
+            wheel[(int) (deadline.expiryTick & mask)] = deadline.next;
+        }
+        if (deadline.next != null) {
+            deadline.next.prev = deadline.prev;
+        }
+        deadline.prev = null;
+        deadline.next = null;
+    }
+
+    /**
+     * The scheduler thread: wait for each tick, then expire the deadlines
+     * filed under it.
+     */
+    private void run()
+    {
+        List<Deadline> expired = new ArrayList<>();
+        while (true) {
+            long nextTickMillis = (currentTick + 1) * tickMillis;
+            long wait = nextTickMillis - elapsedMillis();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait * 1_000_000);
+                continue;
+            }
+
+            synchronized (this) {
+                currentTick++;
+                Deadline deadline = wheel[(int) (currentTick & mask)];
+                while (deadline != null) {
+                    Deadline next = deadline.next;
+                    // Deadlines more than one turn of the wheel away stay put.
+                    if (deadline.expiryTick <= currentTick) {
+                        unlink(deadline);
+                        deadline.state = Deadline.EXPIRED;
+                        expired.add(deadline);
+                    }
+                    deadline = next;
+                }
+            }
+
+            for (Deadline deadline : expired) {
+                try {
+                    deadline.action.run();
+                }
+                catch (RuntimeException e) {
+                    // One broken action must not stop every other session's clock.
+                    e.printStackTrace();
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * A pending time limit. It can be cancelled, paused and resumed, or
+     * extended while it is running.
+     */
+    public class Deadline
+    {
+        private static final int WAITING = 0;
+        private static final int PAUSED = 1;
+        private static final int EXPIRED = 2;
+        private static final int CANCELLED = 3;
+
+        private final Runnable action;
+        private long expiryTick;
+        private long pausedRemaining;
+        private int state;
+        private Deadline prev;
+        private Deadline next;
+
+        private Deadline(Runnable action)
+        {
+            this.action = action;
+        }
+
+        /**
+         * Cancel the deadline. Its action will not run.
+         * @return true if it was cancelled, false if it had already expired.
+         */
+        public boolean cancel()
+        {
+            synchronized (DeadlineScheduler.this) {
+                if (state == EXPIRED) {
+                    return false;
+                }
+                if (state == WAITING) {
+                    unlink(this);
+                }
+                state = CANCELLED;
+                return true;
+            }
+        }
+
+        /**
+         * Stop the clock. The remaining time is kept until resume() is called.
+         */
+        public void pause()
+        {
+            synchronized (DeadlineScheduler.this) {
+                if (state == WAITING) {
+                    pausedRemaining = remaining();
+                    unlink(this);
+                    state = PAUSED;
+                }
+            }
+        }
+
+        /**
+         * Restart the clock after pause() with the time that was left.
+         */
+        public void resume()
+        {
+            synchronized (DeadlineScheduler.this) {
+                if (state == PAUSED) {
+                    insert(this, elapsedMillis() + pausedRemaining);
+                }
+            }
+        }
+
+        /**
+         * Give the deadline more time.
+         * @param millis The number of milliseconds to add.
+         */
+        public void extend(long millis)
+        {
+            synchronized (DeadlineScheduler.this) {
+                if (state == PAUSED) {
+                    pausedRemaining += millis;
+                }
+                else if (state == WAITING) {
+                    long remaining = remaining();
+                    unlink(this);
+                    insert(this, elapsedMillis() + remaining + millis);
+                }
+            }
+        }
+
+        /**
+         * @return The milliseconds left before the deadline expires,
+         *         0 if it has expired or been cancelled.
+         */
+        public long getRemainingMillis()
+        {
+            synchronized (DeadlineScheduler.this) {
+                if (state == PAUSED) {
+                    return pausedRemaining;
+                }
+                if (state == WAITING) {
+                    return remaining();
+                }
+                return 0;
+            }
+        }
+
+        /**
+         * @return true if the deadline has run out.
+         */
+        public boolean isExpired()
+        {
+            synchronized (DeadlineScheduler.this) {
+                return state == EXPIRED;
+            }
+        }
+
+        private long remaining()
+        {
+            return Math.max(0, expiryTick * tickMillis - elapsedMillis());
+        }
+    }
+}
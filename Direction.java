@@ -0,0 +1,71 @@
+/**
+ * The directions an exit can lead in, along with the word the player
+ * types for each of them.
+ *
+ * Directions can be looked up by any unambiguous prefix, so "n" means
+ * north and "d" means down.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public enum Direction
+{
+    NORTH("north"), EAST("east"), SOUTH("south"), WEST("west"), UP("up"), DOWN("down");
+
+    // All directions by name and unambiguous prefix.
+    private static final WordTrie<Direction> names = createNames();
+
+    // The direction word.
+    private String name;
+
+    /**
+     * Initialise with the corresponding direction word.
+     * @param name The direction word.
+     */
+    Direction(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Find the direction a word stands for.
+     * @param word The direction word or an unambiguous prefix of it.
+     * @return The direction, or null if the word is not a direction.
+     */
+    public static Direction find(CharSequence word)
+    {
+        return names.get(word);
+    }
+
+    /**
+     * @return The direction that leads back, e.g. south for north.
+     */
+    public Direction opposite()
+    {
+        switch (this) {
+            case NORTH: return SOUTH;
+            case EAST:  return WEST;
+            case SOUTH: return NORTH;
+            case WEST:  return EAST;
+            case UP:    return DOWN;
+            default:    return UP;
+        }
+    }
+
+    /**
+     * @return The direction word.
+     */
+    public String toString()
+    {
+        return name;
+    }
+
+    private static WordTrie<Direction> createNames()
+    {
+        WordTrie<Direction> trie = new WordTrie<>();
+        for (Direction direction : values()) {
+            trie.put(direction.name, direction);
+        }
+        return trie;
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * An EventInbox holds the batches of room events (see RoomEvents) a
+ * player has not read yet. It holds at most a fixed number of events:
+ * when a batch does not fit, it is dropped and only counted, and the
+ * player is told how much they missed the next time they read the
+ * inbox. A player who stops typing therefore never holds up the events
+ * of others or uses more than a bounded amount of memory.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class EventInbox
+{
+    /** The most events an inbox holds unless told otherwise. */
+    public static final int DEFAULT_CAPACITY = 50;
+
+    private int capacity;
+    private ArrayDeque<List<RoomEvents.Event>> batches;
+    private int held;       // events in the batches
+    private long missed;    // events dropped since the inbox was last read
+
+    /**
+     * Create an empty inbox with the default capacity.
+     */
+    public EventInbox()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty inbox.
+     * @param capacity The most events it holds.
+     */
+    public EventInbox(int capacity)
+    {
+        this.capacity = capacity;
+        batches = new ArrayDeque<>();
+    }
+
+    /**
+     * Add a batch of events. If only part of it fits, the first events
+     * are kept and the rest are counted as missed. The batch is shared
+     * with the other players in the room and must not be changed.
+     * @param batch The events.
+     * @return true if the whole batch was added.
+     */
+    public synchronized boolean offer(List<RoomEvents.Event> batch)
+    {
+        int fit = Math.min(batch.size(), capacity - held);
+        missed += batch.size() - fit;
+        if (fit > 0) {
+            batches.add(fit == batch.size() ? batch : batch.subList(0, fit));
+            held += fit;
+        }
+        return fit == batch.size();
+    }
+
+    /**
+     * Print the events in the inbox, leaving out those a player caused
+     * themselves, and empty it.
+     * @param reader The player reading the inbox.
+     * @param out Where to print the events.
+     */
+    public void readTo(Player reader, OutputSink out)
+    {
+        List<RoomEvents.Event> batch;
+        while ((batch = poll()) != null) {
+            for (RoomEvents.Event event : batch) {
+                if (event.getSource() != reader) {
+                    out.println(event.getText());
+                }
+            }
+        }
+        long dropped = takeMissed();
+        if (dropped > 0) {
+            out.println("(" + dropped + " more things happened around you while you were away.)");
+        }
+    }
+
+    /**
+     * @return true if there is nothing to read.
+     */
+    public synchronized boolean isEmpty()
+    {
+        return batches.isEmpty() && missed == 0;
+    }
+
+    private synchronized List<RoomEvents.Event> poll()
+    {
+        List<RoomEvents.Event> batch = batches.poll();
+        if (batch != null) {
+            held -= batch.size();
+        }
+        return batch;
+    }
+
+    private synchronized long takeMissed()
+    {
+        long dropped = missed;
+        missed = 0;
+        return dropped;
+    }
+}
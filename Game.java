@@ -1,8 +1,12 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Stack;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
  *  This class is the main class of the "World of Zuul" application. 
  *  "World of Zuul" is a very simple, text based adventure game.  Users 
@@ -12,9 +16,11 @@ import java.util.TimerTask;
  *  To play this game, create an instance of this class and call the "play"
  *  method.
  * 
- *  This main class creates and initialises all the others: it creates all
- *  rooms, creates the parser and starts the game.  It also evaluates and
- *  executes the commands that the parser returns.
+ *  Each Game is one player's session: it holds the player's position and
+ *  history, reads commands from its own input stream and writes to its own
+ *  output stream. The map itself lives in a World, which may be shared by
+ *  many sessions (see SessionHost).  The game evaluates and executes the
+ *  commands that the parser returns.
  * 
  * @author  Omar Malik
  * @version 2023.10.18
@@ -22,86 +28,85 @@ import java.util.TimerTask;
 
 public class Game 
 {
+    // The code that executes each command word, shared by all sessions.
+    private static final EnumMap<CommandWord, CommandHandler> handlers = createHandlers();
+    private static final int FIND_LIMIT = 10; // Most items "find" lists
+    /** The most steps back a session remembers unless told otherwise. */
+    public static final int DEFAULT_HISTORY_CAPACITY = 100;
+    private static final AtomicInteger sessionCount = new AtomicInteger(); // Names the players
+    private static final int OTHERS_LISTED = 5; // Most other players "look" names
+    // Counts what replayed commands do, so they don't show in the real metrics.
+    private static final CommandMetrics replayMetrics = new CommandMetrics();
+
     private Parser parser;
+    private OutputSink out;         // where this session's output goes
+    private World world;
     private Room currentRoom;
-    private Stack<Room> roomHistory; // Stack to track visited rooms
+    private RoomHistory roomHistory; // The rooms the player came through
     private Room previousRoom; // Declare previousRoom at the class level
     private Player player;
+    private Set<Room> changedTrapDoors; // Rooms whose trap door we opened or closed
     
-    private Timer timer;
+    private DeadlineScheduler.Deadline timer;
     private int timeLimit; // Time limit in seconds
+    private volatile boolean timeUp; // Set when the time limit runs out
+    private int commandCount; // Number of commands processed so far
+    private boolean wantToQuit; // Set by the quit command
+    private boolean finished; // Set once the player has quit
+    private CommandJournal journal; // Records processed commands, or null
+    private CommandMetrics metrics; // Counts what the sessions do
+    private WorldShards shards; // Run the commands, or null
+    private RoomEvents events; // Tells others in the room what this player does
+    private boolean handingOff; // Set when a command moved the player to another shard
+    private boolean replaying; // Set while commands are replayed from the journal
+
     /**
-     * Create the game and initialise its internal map.
+     * Create the game and initialise its internal map. The game is played
+     * on the terminal.
      */
     public Game() 
     {
-        createRooms();
-        parser = new Parser();
-        roomHistory = new Stack<>();
+        this(new World(), System.in, System.out);
+        world.start();
+    }
+
+    /**
+     * Create a game session on the given world.
+     * @param world The world to play in. It may be shared with other sessions.
+     * @param in The stream the player's commands are read from.
+     * @param out The stream the game's output is written to. The response
+     *            to each command is written in one go.
+     */
+    public Game(World world, InputStream in, OutputStream out)
+    {
+        this(world, in, out, DEFAULT_HISTORY_CAPACITY);
+    }
+
+    /**
+     * Create a game session on the given world. Nothing in the world moves
+     * on its own unless whoever hosts it has started it (see World.start).
+     * @param world The world to play in. It may be shared with other sessions.
+     * @param in The stream the player's commands are read from.
+     * @param out The stream the game's output is written to.
+     * @param historyCapacity The most steps the player can go back.
+     */
+    public Game(World world, InputStream in, OutputStream out, int historyCapacity)
+    {
+        this.out = new OutputSink(out);
+        this.world = world;
+        currentRoom = world.getStartRoom();
+        parser = new Parser(in, this.out);
+        roomHistory = new RoomHistory(historyCapacity);
+        changedTrapDoors = new LinkedHashSet<>();
         player = new Player(currentRoom);
+        player.setName("Player " + sessionCount.incrementAndGet());
+        currentRoom.enter(player);
+        metrics = CommandMetrics.getShared();
+        shards = world.getShards();
+        events = world.getEvents();
         timeLimit = 600; // Set a 10-minute time limit
-        timer = new Timer();
-        timer.schedule(new GameTimer(), timeLimit * 1000); // Schedule the timer
-    }
-
-    /**
-     * Create all the rooms and link their exits together.
-     */
-    private void createRooms()
-    {
-        Room outside, theater, pub, lab, office, dorm, mainBuilding, classRoom, 
-        computerLab, bathRoom, library, garden, gym, cafeteria, gamelounge;
-      
-        // create the rooms
-        outside = new Room("outside the main entrance of the university");
-        theater = new Room("in a lecture theater");
-        pub = new Room("in the campus pub");
-        lab = new Room("in a computing lab");
-        office = new Room("in the computing admin office");
-        dorm = new Room("in a dormitory room");
-        mainBuilding = new Room("in the main building");
-        classRoom = new Room("in a classroom");
-        computerLab = new Room("in computer lab");
-        bathRoom = new Room("in a bathroom");
-        library = new Room("in the university library");
-        garden = new Room("in a beautiful garden");
-        gym = new Room("in the university gym");
-        cafeteria = new Room("in the cafeteria");
-        gamelounge = new Room("in the gaming lounge");
-        
-        Item map = new Item("Map of the campus", "A detailed map of the university campus.", 0.5);
-        outside.addItem(map);
-        Item ring = new Item("Enchanted Ring", "A mysterious ring with a glow to it", 0.5);
-        outside.addItem(ring);
-        
-        // Creates a "Wooden Sword" item and associate it with the "theater" room
-        Item woodSword = new Item("Wood Sword", "A simple wooden sword", 3.0);
-        theater.addItem(woodSword);
-        Item fakeGun = new Item("Fake Gun","A toy gun that looks real.", 2.0);
-        theater.addItem(fakeGun);
-        
-        // initialise room exits
-        outside.setExit("east", theater);
-        outside.setExit("south", lab);
-        outside.setExit("west", pub);
-        outside.setExit("north", mainBuilding);
-        theater.setExit("west", outside);
-        pub.setExit("east", outside);
-        lab.setExit("north", outside);
-        lab.setExit("east", office);
-        office.setExit("west", lab);
-        dorm.setExit("north", outside);
-        mainBuilding.setExit("south", outside);
-        mainBuilding.setExit("east", classRoom);
-        mainBuilding.setExit("west", library);
-        classRoom.setExit("west", mainBuilding);
-        library.setExit("east", mainBuilding);
-        garden.setExit("south", outside);
-        gym.setExit("east", outside);
-        cafeteria.setExit("north", outside);
-        gamelounge.setExit("north", mainBuilding);
-        
-        currentRoom = outside;  // start game outside
+        // Schedule the time limit on the timer shared by all sessions
+        timer = DeadlineScheduler.getShared().schedule(timeLimit * 1000L, this::timeUp);
     }
 
     /**
@@ -109,19 +114,87 @@ public class Game
      */
     public void play() 
     {            
-        printWelcome();
+        begin();
 
         // Enter the main command loop.  Here we repeatedly read commands and
         // execute them until the game is over.
-                
-        boolean finished = false;
+        while (step() != null) {
+            // each step reads and executes one command
+        }
+        finish();
+    }
+
+    /**
+     * Start the session: greet the player and describe the first room.
+     * Use this, step and finish instead of play to drive a session one
+     * command at a time, e.g. from a load generator.
+     */
+    public void begin()
+    {
+        if (shards != null) {
+            // The start room is read on the shard that owns it.
+            shards.run(currentRoom.getId(), () -> {
+                printWelcome();
+                return lookAround();
+            });
+            return;
+        }
+        printWelcome();
         // Display the initial room description
-        System.out.println(currentRoom.getLongDescription()); 
-        while (! finished) {
-            Command command = parser.getCommand();
+        out.println(currentRoom.getLongDescription()); 
+    }
+
+    /**
+     * Read the next command and execute it.
+     * @return The command that was executed, or null if the game was
+     *         already over (the player quit or the time ran out).
+     */
+    public Command step()
+    {
+        if (finished || timeUp) {
+            return null;
+        }
+        Command command = parser.getCommand();
+        if (timeUp) {
+            return null;
+        }
+        // What the others did since the last command comes first.
+        player.getInbox().readTo(player, out);
+        long start = System.nanoTime();
+        if (shards == null) {
             finished = processCommand(command);
         }
-        System.out.println("Thank you for playing.  Good bye.");
+        else {
+            finished = shards.run(currentRoom.getId(), () -> processCommand(command));
+            if (handingOff) {
+                handingOff = false;
+                shards.handOff(currentRoom.getId(), this::lookAround);
+            }
+        }
+        metrics.commandExecuted(command.getCommandWord(), System.nanoTime() - start);
+        commandCount++;
+        if (journal != null) {
+            record(command);
+        }
+        return command;
+    }
+
+    /**
+     * End the session and say good bye.
+     */
+    public void finish()
+    {
+        timer.cancel();
+        if (journal != null) {
+            closeJournal();
+        }
+        currentRoom.leave(player);
+        tell(currentRoom, " leaves the game.");
+        if (timeUp) {
+            out.println("Time's up! Game over.");
+        }
+        out.println("Thank you for playing.  Good bye.");
+        out.flush();
     }
 
     /**
@@ -129,64 +202,158 @@ public class Game
      */
     private void printWelcome()
     {
-        System.out.println();
-        System.out.println("Welcome to the World of Zuul!");
-        System.out.println("World of Zuul is a new, incredibly boring adventure game.");
-        System.out.println("Type '" + CommandWord.HELP + "' if you need help.");
-        System.out.println();
+        out.println();
+        out.println("Welcome to the World of Zuul!");
+        out.println("World of Zuul is a new, incredibly boring adventure game.");
+        out.println("Type '" + CommandWord.HELP + "' if you need help.");
+        out.println();
         
-        System.out.println(currentRoom.getLongDescription());
+        out.println(currentRoom.getLongDescription());
+    }
+
+    /**
+     * Describe the room the player has just moved into. If it belongs to
+     * another shard than the one running the command, the player is
+     * handed off to that shard, which describes the room once the command
+     * is done (see step).
+     */
+    private void arrive()
+    {
+        if (shards != null && !shards.isOwner(currentRoom.getId())) {
+            handingOff = true;
+        }
+        else {
+            out.println(currentRoom.getLongDescription());
+        }
+    }
+
+    /**
+     * Describe the current room.
+     * @return false, so it can be run as a shard task.
+     */
+    private boolean lookAround()
+    {
+        out.println(currentRoom.getLongDescription());
+        return false;
     }
 
     /**
-     * Given a command, process (that is: execute) the command.
+     * Given a command, process (that is: execute) the command. Package
+     * access so that Benchmark can measure it.
      * @param command The command to be processed.
      * @return true If the command ends the game, false otherwise.
      */
-    private boolean processCommand(Command command) 
+    boolean processCommand(Command command) 
     {
-        boolean wantToQuit = false;
+        wantToQuit = false;
 
-        CommandWord commandWord = command.getCommandWord();
+        CommandHandler handler = handlers.get(command.getCommandWord());
+        if (handler != null) {
+            handler.execute(this, command);
+        }
+        return wantToQuit;
+    }
 
-        switch (commandWord) {
-            case UNKNOWN:
-                System.out.println("I don't know what you mean...");
-                break;
+    /**
+     * Build the table that maps every command word to the code that
+     * executes it. Adding a command means adding a CommandWord and an
+     * entry here.
+     */
+    private static EnumMap<CommandWord, CommandHandler> createHandlers()
+    {
+        EnumMap<CommandWord, CommandHandler> table = new EnumMap<>(CommandWord.class);
+        table.put(CommandWord.UNKNOWN, Game::unknown);
+        table.put(CommandWord.HELP, (game, command) -> game.printHelp());
+        table.put(CommandWord.GO, Game::goRoom);
+        table.put(CommandWord.LOOK, Game::look);
+        table.put(CommandWord.EAT, (game, command) -> command.executeEat(game.out));
+        table.put(CommandWord.BACK, Game::goBack);
+        table.put(CommandWord.OPEN_TRAPDOOR, Game::openTrapDoor);
+        table.put(CommandWord.CLOSE_TRAPDOOR, Game::closeTrapDoor);
+        table.put(CommandWord.TRAVEL, Game::travel);
+        table.put(CommandWord.TAKE, Game::take);
+        table.put(CommandWord.DROP, Game::drop);
+        table.put(CommandWord.FIND, Game::find);
+        table.put(CommandWord.WHERE, Game::find);
+        table.put(CommandWord.PUT, Game::put);
+        table.put(CommandWord.INVENTORY, (game, command) -> game.inventory());
+        table.put(CommandWord.STATS, (game, command) -> {
+            game.out.println(game.metrics.getReport());
+            game.out.println(game.world.getTicker().getReport());
+        });
+        table.put(CommandWord.QUIT, (game, command) -> game.wantToQuit = game.quit(command));
+        return table;
+    }
 
-            case HELP:
-                printHelp();
-                break;
+    /**
+     * The code that executes one kind of command.
+     */
+    private interface CommandHandler
+    {
+        /**
+         * Execute a command in a game.
+         * @param game The game the command was entered in.
+         * @param command The command.
+         */
+        void execute(Game game, Command command);
+    }
 
-            case GO:
-                goRoom(command);
-                break;
-            
-            case LOOK: // Handle the "look" command here
-                if (command.hasSecondWord()) {
-                System.out.println("Look what?");
-            } else {
-                System.out.println(currentRoom.getLongDescription());
-            }
-            break;
-            
-            case EAT:
-                command.executeEat();
-                break;
-            
-            case BACK:
-                goBack();
-                break;
+    // implementations of user commands:
+
+    /**
+     * Print the description of the current room. Anything typed after
+     * "look" has already been dropped by the tokenizer.
+     */
+    private void look(Command command)
+    {
+        out.println(currentRoom.getLongDescription());
+        describeOthers();
+    }
 
-            
-            case QUIT:
-                wantToQuit = quit(command);
+    /**
+     * Name the NPCs and some of the other players in the current room.
+     */
+    private void describeOthers()
+    {
+        for (WorldTicker.Npc npc : world.getTicker().getNpcs(currentRoom)) {
+            out.println(npc.getHereText());
+        }
+        int others = currentRoom.getOccupantCount() - 1;
+        if (others <= 0) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("Also here:");
+        int listed = 0;
+        for (Player other : currentRoom.getOccupants()) {
+            if (listed == OTHERS_LISTED) {
                 break;
+            }
+            if (other != player) {
+                text.append(listed > 0 ? ", " : " ").append(other.getName());
+                listed++;
+            }
         }
-        return wantToQuit;
+        if (others > listed) {
+            text.append(" and ").append(others - listed).append(" more");
+        }
+        out.println(text.append('.').toString());
     }
 
-    // implementations of user commands:
+    /**
+     * Tell the player a command was not understood, and which command
+     * they may have meant.
+     */
+    private void unknown(Command command)
+    {
+        out.println("I don't know what you mean...");
+        String typed = command.getTypedWord();
+        CommandWord meant = typed != null ? parser.suggestCommand(typed) : null;
+        if (meant != null) {
+            String again = command.hasSecondWord() ? meant + " " + command.getSecondWord()
+                                                   : meant.toString();
+            out.println("Did you mean \"" + again + "\"?");
+        }
+    }
 
     /**
      * Print out some help information.
@@ -195,21 +362,22 @@ public class Game
      */
     private void printHelp() 
     {
-        System.out.println("You are lost. You are alone. You wander");
-        System.out.println("around at the university.");
-        System.out.println();
-        parser.showCommands();
+        out.println("You are lost. You are alone. You wander");
+        out.println("around at the university.");
+        out.println();
+        parser.showCommands(out);
     }
 
     /** 
-     * Try to go in one direction. If there is an exit, enter the new
-     * room, otherwise print an error message.
+     * Try to go in one direction, or down through the trap door ("go
+     * trapdoor"). If there is an exit, enter the new room, otherwise
+     * print an error message.
      */
     private void goRoom(Command command) 
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
+            out.println("Go where?");
             return;
         }
 
@@ -217,58 +385,378 @@ public class Game
         previousRoom = currentRoom;
         
         String direction = command.getSecondWord();
+        if (direction.equalsIgnoreCase("trapdoor")) {
+            goThroughTrapDoor();
+            return;
+        }
         // Try to leave current room.
-        Room nextRoom = currentRoom.getExit(direction);
+        Direction way = Direction.find(direction);
+        Room nextRoom = way != null ? currentRoom.getExit(way) : null;
 
         if (nextRoom == null) {
-            System.out.println("There is no door!");
+            out.println("There is no door!");
+            // Only a word that is no direction at all may be a typo.
+            String meant = way == null ? currentRoom.suggestExit(direction) : null;
+            if (meant != null) {
+                out.println("Did you mean \"go " + meant + "\"?");
+            }
         }
         else {
-            roomHistory.push(currentRoom); // Push the current room onto the stack
-            currentRoom = nextRoom;
-            System.out.println(currentRoom.getLongDescription());
+            roomHistory.push(currentRoom.getId()); // Remember where we came from
+            enterRoom(nextRoom, way);
+            arrive();
         }
     }
     
-    private class GameTimer extends TimerTask {
-        @Override
-        public void run() {
-            // Time's up! Implement your game over logic here.
-            System.out.println("Time's up! Game over.");
-            System.exit(0); // Terminate the game
+    /**
+     * Take an item from the current room, or out of a bag ("take ring
+     * from backpack").
+     */
+    private void take(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            out.println("Take what?");
+            return;
+        }
+        String what = command.getSecondWord();
+        int from = findWord(what, "from");
+        if (from >= 0) {
+            takeFromBag(what.substring(0, from).trim(), what.substring(from + 4).trim());
+            return;
+        }
+
+        Item item = currentRoom.findItem(what);
+        if (item == null) {
+            out.println("There is no " + what + " here.");
+            Item meant = currentRoom.suggestItem(what);
+            if (meant != null) {
+                out.println("Did you mean the " + meant.getName() + "?");
+            }
+        }
+        else if (!player.pickUpItem(item)) {
+            cannotCarry(item, currentRoom);
+        }
+        else {
+            metrics.itemMoved();
+            out.println("You take the " + item.getName() + ".");
+            tell(currentRoom, " picks up the " + item.getName() + ".");
+        }
+    }
+
+    /**
+     * Take an item out of a bag the player carries or that is in the room.
+     */
+    private void takeFromBag(String itemName, String bagName)
+    {
+        Bag bag = findBag(bagName);
+        if (bag == null) {
+            return;
+        }
+        Item item = bag.findItem(itemName);
+        if (item == null) {
+            out.println("There is no " + itemName + " in the " + bag.getName() + ".");
+        }
+        else if (!player.takeItem(item, bag)) {
+            cannotCarry(item, bag);
+        }
+        else {
+            metrics.itemMoved();
+            out.println("You take the " + item.getName() + " from the " + bag.getName() + ".");
+        }
+    }
+
+    /**
+     * Put an item the player carries into a bag ("put ring in backpack").
+     */
+    private void put(Command command)
+    {
+        int in = command.hasSecondWord() ? findWord(command.getSecondWord(), "in") : -1;
+        if (in < 0) {
+            out.println("Put what in what?");
+            return;
+        }
+        String itemName = command.getSecondWord().substring(0, in).trim();
+        Bag bag = findBag(command.getSecondWord().substring(in + 2).trim());
+        if (bag == null) {
+            return;
+        }
+        Item item = player.findItem(itemName);
+        if (item == null) {
+            out.println("You don't have the " + itemName + ".");
+        }
+        else if (item == bag || !player.putItem(item, bag)) {
+            out.println("The " + item.getName() + " doesn't fit in the " + bag.getName() + ".");
+        }
+        else {
+            metrics.itemMoved();
+            out.println("You put the " + item.getName() + " in the " + bag.getName() + ".");
+        }
+    }
+
+    /**
+     * List what the player carries and how much it weighs.
+     */
+    private void inventory()
+    {
+        if (player.getInventory().isEmpty()) {
+            out.println("You are not carrying anything.");
+            return;
+        }
+        out.println("You are carrying:");
+        for (Item item : player.getInventory()) {
+            out.println(" - " + item.getName() + " (" + item.getWeight() + " kg)");
+        }
+        out.printf("%d of %d items, %.1f of %.1f kg.%n", player.getInventory().size(),
+                   player.getMaxCount(), player.getCarriedWeight(), player.getMaxWeight());
+    }
+
+    /**
+     * Explain why the player cannot take an item.
+     * @param item The item.
+     * @param from Where the item was when the player reached for it.
+     */
+    private void cannotCarry(Item item, ItemContainer from)
+    {
+        if (item.getLocation() != from) {
+            // Someone else got to it first.
+            out.println("The " + item.getName() + " is gone.");
+        }
+        else if (!player.hasRoomForItem()) {
+            out.println("You can't carry any more things.");
+        }
+        else {
+            out.println("The " + item.getName() + " is too heavy to carry as well.");
+        }
+    }
+
+    /**
+     * Find a bag the player carries or that is in the current room,
+     * telling the player if there is none.
+     */
+    private Bag findBag(String name)
+    {
+        Item item = player.findItem(name);
+        if (item == null) {
+            item = currentRoom.findItem(name);
+        }
+        if (item == null) {
+            out.println("There is no " + name + " here.");
+            return null;
+        }
+        if (!(item instanceof Bag)) {
+            out.println("You can't put things in the " + item.getName() + ".");
+            return null;
         }
+        return (Bag) item;
+    }
+
+    /**
+     * Find the last place a word stands on its own in some text, ignoring
+     * case, e.g. "in" in "put ring in backpack".
+     * @return The word's index, or -1 if it is not there.
+     */
+    private static int findWord(String text, String word)
+    {
+        String lower = text.toLowerCase();
+        int index = lower.lastIndexOf(" " + word + " ");
+        return index >= 0 ? index + 1 : -1;
+    }
+
+    /**
+     * Drop an item the player carries in the current room.
+     */
+    private void drop(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            out.println("Drop what?");
+            return;
+        }
+        Item item = player.findItem(command.getSecondWord());
+        if (item == null || !player.dropItem(item)) {
+            out.println("You don't have the " + command.getSecondWord() + ".");
+        }
+        else {
+            metrics.itemMoved();
+            out.println("You drop the " + item.getName() + ".");
+            tell(currentRoom, " drops the " + item.getName() + ".");
+        }
+    }
+
+    /**
+     * Say where the items matching some words are, e.g. "find ring" or
+     * "where is the sword".
+     */
+    private void find(Command command)
+    {
+        String query = command.hasSecondWord() ? command.getSecondWord() : "";
+        if (!ItemCatalog.hasSearchWords(query)) {
+            out.println(command.getCommandWord() == CommandWord.WHERE ? "Where is what?" : "Find what?");
+            return;
+        }
+        List<Item> found = world.getGraph().findItems(query, FIND_LIMIT + 1);
+        int shown = 0;
+        for (Item item : found) {
+            ItemContainer location = item.getLocation();
+            if (shown == FIND_LIMIT || location == null) {
+                continue;
+            }
+            if (location == player) {
+                out.println("You are carrying the " + item.getName() + ".");
+            }
+            else if (location instanceof Bag) {
+                out.println("The " + item.getName() + " is in the "
+                            + ((Bag) location).getName() + ".");
+            }
+            else if (location instanceof Room) {
+                out.println("The " + item.getName() + " is "
+                            + ((Room) location).getShortDescription() + ".");
+            }
+            else if (location instanceof Player) {
+                out.println(((Player) location).getName() + " is carrying the "
+                            + item.getName() + ".");
+            }
+            else {
+                out.println("Someone else is carrying the " + item.getName() + ".");
+            }
+            shown++;
+        }
+        if (shown == 0) {
+            out.println("You have no idea where to find that.");
+        }
+        else if (found.size() > FIND_LIMIT) {
+            out.println("...and there are more.");
+        }
+    }
+
+    /** 
+     * Travel to a named room along the shortest route, in one step. Every
+     * room passed through is added to the history, as if the player had
+     * walked.
+     */
+    private void travel(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            out.println("Travel where?");
+            return;
+        }
+
+        Room destination = world.getGraph().findRoom(command.getSecondWord());
+        if (destination == null) {
+            out.println("There is no such place.");
+            return;
+        }
+        List<Direction> route = world.getRoutes().findRoute(currentRoom.getId(), destination.getId());
+        if (route == null) {
+            out.println("You can't get there from here.");
+            return;
+        }
+
+        if (route.isEmpty()) {
+            out.println("You are already there.");
+            return;
+        }
+
+        previousRoom = currentRoom;
+        for (Direction direction : route) {
+            roomHistory.push(currentRoom.getId());
+            enterRoom(currentRoom.getExit(direction), direction);
+        }
+        out.println(route.size() == 1 ? "You travel 1 room." : "You travel " + route.size() + " rooms.");
+        arrive();
+    }
+
+    /**
+     * Called by the timer when the time limit runs out. Only this session
+     * ends: it stops before processing the player's next command, and
+     * tells the player why in finish. Nothing is written here, since the
+     * timer's thread is shared by all sessions and must not wait for a
+     * player's connection.
+     */
+    private void timeUp()
+    {
+        timeUp = true;
+    }
+
+    /**
+     * @return The time limit of this session, which can be paused,
+     *         extended or cancelled.
+     */
+    public DeadlineScheduler.Deadline getTimer()
+    {
+        return timer;
     }
     
     
     /**
      * Handles the opening the trap door in the current room.
      */
-    private void openTrapDoor()
+    private void openTrapDoor(Command command)
     {
-        if (currentRoom.hasTrapDoor())
+        if (command.hasSecondWord())
         {
-            currentRoom.openTrapDoor();
-            System.out.println("You open the trap door.");
+            out.println("You can't open that.");
+        }
+        else if (!currentRoom.hasTrapDoor())
+        {
+            out.println("There is no trap door here.");
+        }
+        else if (currentRoom.isTrapDoorOpen())
+        {
+            out.println("The trap door is already open.");
         }
         else
         {
-            System.out.println("There is no trap door here.");
+            currentRoom.openTrapDoor();
+            changedTrapDoors.add(currentRoom);
+            out.println("You open the trap door.");
         }
     }
     
     /**
      * Handles the closing of the trap door in the current room.
      */
-    private void closeTrapDoor()
+    private void closeTrapDoor(Command command)
     {
-        if (currentRoom.hasTrapDoor())
+        if (command.hasSecondWord())
+        {
+            out.println("You can't close that.");
+        }
+        else if (!currentRoom.hasTrapDoor())
+        {
+            out.println("There is no trap door here.");
+        }
+        else if (!currentRoom.isTrapDoorOpen())
+        {
+            out.println("The trap door is already closed.");
+        }
+        else
         {
             currentRoom.closeTrapDoor();
-            System.out.println("You close the trap door.");
+            changedTrapDoors.add(currentRoom);
+            out.println("You close the trap door.");
+        }
+    }
+
+    /**
+     * Drop through the open trap door of the current room. The way is one
+     * way only, so there is no going back from where the player lands.
+     */
+    private void goThroughTrapDoor()
+    {
+        if (!currentRoom.hasTrapDoor())
+        {
+            out.println("There is no trap door here.");
+        }
+        else if (!currentRoom.isTrapDoorOpen())
+        {
+            out.println("The trap door is closed.");
         }
         else
         {
-            System.out.println("There is no trap door here.");
+            roomHistory.clear();
+            enterRoom(currentRoom.getTrapDoorTarget(), Direction.DOWN);
+            out.println("You drop through the trap door. There is no way back up.");
+            arrive();
         }
     }
     
@@ -280,7 +768,7 @@ public class Game
     private boolean quit(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
+            out.println("Quit what?");
             return false;
         }
         else {
@@ -288,17 +776,192 @@ public class Game
         }
     }
     
-    private void goBack() {
+    /**
+     * Go back to the room the player came from, or several steps back
+     * ("back 3"). Going back retraces the player's steps, so going back
+     * again leads further back, not to where the player just was.
+     */
+    private void goBack(Command command) {
+        int steps = 1;
+        if (command.hasSecondWord()) {
+            try {
+                steps = Integer.parseInt(command.getSecondWord());
+            }
+            catch (NumberFormatException e) {
+                steps = 0;
+            }
+            if (steps < 1) {
+                out.println("Back how far?");
+                return;
+            }
+        }
         if (roomHistory.isEmpty()) {
-            System.out.println("You can't go back any further.");
-        } else {
-            Room tempRoom = currentRoom;
-            currentRoom = roomHistory.pop(); // Pop the previous room from the stack
-            roomHistory.push(tempRoom); // Push the current room back onto the stack
-            System.out.println(currentRoom.getLongDescription());
+            out.println("You can't go back any further.");
+            return;
+        }
+        boolean tooFar = steps > roomHistory.size();
+        enterRoom(world.getGraph().getRoom(roomHistory.pop(steps)), null);
+        if (tooFar) {
+            out.println("You can't go back any further than this.");
+        }
+        arrive();
+    }
+
+    /**
+     * Record every command this session processes from now on in a
+     * journal, so the session can be recovered after a restart.
+     * @param journal The journal, usually opened with CommandJournal.open.
+     */
+    public void setJournal(CommandJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Process a command again while recovering a session from its
+     * journal. Nothing is printed, the other players are not told about
+     * it, and it is not counted in the metrics: it happened before. As
+     * in step, the command runs on the shard that owns the player's room.
+     * @param command The command that was processed before.
+     */
+    void replay(Command command)
+    {
+        CommandMetrics live = metrics;
+        replaying = true;
+        metrics = replayMetrics;
+        try {
+            if (shards == null) {
+                processCommand(command);
+            }
+            else {
+                // Like a live command, on the shard that owns the room.
+                shards.run(currentRoom.getId(), () -> processCommand(command));
+            }
+        }
+        finally {
+            metrics = live;
+            replaying = false;
+        }
+        handingOff = false;
+        commandCount++;
+        out.clear();
+    }
+
+    private void record(Command command)
+    {
+        try {
+            journal.record(command);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeJournal()
+    {
+        try {
+            journal.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // access to the session's state, used to save and restore it
+    // (see SessionSnapshot):
+
+    World getWorld()
+    {
+        return world;
+    }
+
+    Room getCurrentRoom()
+    {
+        return currentRoom;
+    }
+
+    /**
+     * Move the player into a room, counting it in the metrics and telling
+     * the players in both rooms.
+     * @param room The room.
+     * @param direction The way the player went, or null if they did not
+     *                  go through an exit (e.g. going back several steps).
+     */
+    private void enterRoom(Room room, Direction direction)
+    {
+        Room from = currentRoom;
+        setCurrentRoom(room);
+        metrics.roomEntered();
+        if (direction == null) {
+            tell(from, " leaves.");
+            tell(room, " arrives.");
+        }
+        else if (direction == Direction.UP || direction == Direction.DOWN) {
+            tell(from, " goes " + direction + ".");
+            tell(room, direction == Direction.UP ? " arrives from below." : " arrives from above.");
+        }
+        else {
+            tell(from, " leaves to the " + direction + ".");
+            tell(room, " arrives from the " + direction.opposite() + ".");
         }
     }
 
+    /**
+     * Tell the other players in a room what this player did, if anyone
+     * else is there.
+     * @param room The room.
+     * @param what What the player did, following their name.
+     */
+    private void tell(Room room, String what)
+    {
+        if (!replaying && events.isWatched(room, player)) {
+            events.publish(room, player, player.getName() + what);
+        }
+    }
+
+    /**
+     * Put the player in a room, without printing anything.
+     */
+    void setCurrentRoom(Room room)
+    {
+        currentRoom.leave(player);
+        currentRoom = room;
+        player.setCurrentRoom(room);
+        room.enter(player);
+    }
+
+    RoomHistory getRoomHistory()
+    {
+        return roomHistory;
+    }
+
+    Player getPlayer()
+    {
+        return player;
+    }
+
+    Set<Room> getChangedTrapDoors()
+    {
+        return changedTrapDoors;
+    }
+
+    /**
+     * Replace the time limit by one with the given time left.
+     */
+    void restartTimer(long remainingMillis)
+    {
+        timer.cancel();
+        timer = DeadlineScheduler.getShared().schedule(remainingMillis, this::timeUp);
+    }
+
+    /**
+     * @return The number of commands this session has processed.
+     */
+    public int getCommandCount()
+    {
+        return commandCount;
+    }
+
     public static void main(String[] args) {
         Game game = new Game();
         game.play();
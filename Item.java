@@ -1,14 +1,35 @@
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * The Item class represents an item that can be found in a room.
  * Items have a description and a weight.
+ *
+ * The item's location says who owns it. Moving an item from one place
+ * to another is a single compare-and-set of its location, so when several
+ * players reach for the same item at once, exactly one of them gets it.
  * @author Omar Malik
  * @version 2023.10.20
  */
 public class Item {
+    private static final AtomicReferenceFieldUpdater<Item, ItemContainer> LOCATION =
+        AtomicReferenceFieldUpdater.newUpdater(Item.class, ItemContainer.class, "location");
+    // Shorter words of a name ("of", "a") don't find the item on their own,
+    // nor do these.
+    private static final int MIN_NAME_WORD = 3;
+    private static final List<String> FILLER_WORDS = List.of("the", "and");
+    private static final String[] NO_WORDS = new String[0];
+
     private String name;
     private String description; // Added a description field
     private double weight;
+    private int id = -1; // Set when the item is first placed in a world
+    private volatile ItemContainer location; // Where the item is, or null
+    private volatile ItemContainer home; // The first place it was put in
+    private final String[] nameWords; // The words of the name that find it
 
     /**
      * Create a new Item with the specified description and weight.
@@ -20,6 +41,69 @@ public class Item {
         this.name = name;
         this.description = description;
         this.weight = weight;
+        this.nameWords = splitName(name);
+    }
+
+    /**
+     * Get the id of the item in its world. Ids are given out in the order
+     * items are first placed in rooms, and stay the same across restarts.
+     * @return The id, or -1 if the item has never been placed in a world.
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    void setId(int id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * Get the place the item is in.
+     * @return The room the item lies in or the player carrying it, or
+     *         null if the item has not been placed in a world.
+     */
+    public ItemContainer getLocation()
+    {
+        return location;
+    }
+
+    void setLocation(ItemContainer location)
+    {
+        this.location = location;
+        if (home == null) {
+            home = location;
+        }
+    }
+
+    /**
+     * Get the room or bag the item was first put in, which is where it
+     * goes back to when a player's things are handed back.
+     * @return The room or bag, or null if the item has never been placed.
+     */
+    ItemContainer getHome()
+    {
+        return home;
+    }
+
+    /**
+     * Move the item to another place, but only if it is still where the
+     * caller saw it. The caller then updates the containers' lists.
+     * @param from The place the item is expected to be in.
+     * @param to The place to move it to.
+     * @return true if the item was moved, false if it had already been
+     *         moved somewhere else.
+     */
+    boolean moveLocation(ItemContainer from, ItemContainer to)
+    {
+        if (!LOCATION.compareAndSet(this, from, to)) {
+            return false;
+        }
+        if (home == null) {
+            home = to;
+        }
+        return true;
     }
 
     /**
@@ -30,6 +114,33 @@ public class Item {
     {
         return name;
     }
+
+    /**
+     * Get the words of the item's name a player may use on their own to
+     * mean the item, like "map" for the "Map of the campus": every word
+     * of at least three letters of a name of more than one word, except
+     * "the" and "and".
+     * @return The words, in lower case; empty for a one-word name.
+     */
+    String[] getNameWords()
+    {
+        return nameWords;
+    }
+
+    private static String[] splitName(String name)
+    {
+        if (name.indexOf(' ') < 0) {
+            return NO_WORDS;
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : name.toLowerCase(Locale.ROOT).split(" ")) {
+            if (word.length() >= MIN_NAME_WORD && !FILLER_WORDS.contains(word)
+                    && !words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words.toArray(NO_WORDS);
+    }
     
     /**
      * Get the description of the item.
@@ -48,5 +159,31 @@ public class Item {
     public double getWeight() {
         return weight;
     }
-}
 
+    /**
+     * Items are equal if they are the same item of a world, that is if
+     * they have the same id. Items that have no id yet are only equal to
+     * themselves.
+     *
+     * @param other The object to compare with.
+     * @return true if other is the same item.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Item) || id < 0) {
+            return false;
+        }
+        return id == ((Item) other).id;
+    }
+
+    /**
+     * @return A hash code based on the item's id.
+     */
+    @Override
+    public int hashCode() {
+        return id >= 0 ? id : System.identityHashCode(this);
+    }
+}
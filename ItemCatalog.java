@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * An ItemCatalog is a search index over all the items of a world. The
+ * words of every item's name and description are kept in an inverted
+ * index: for each word, the ids of the items that use it. A query such
+ * as "wooden sword" is answered by intersecting the id lists of its
+ * words, so it takes time in proportion to the number of items that use
+ * the query's words, not the number of items in the world.
+ *
+ * The catalog only knows item ids. Where an item is now is kept by the
+ * item itself (see Item.getLocation), so items moving around never touch
+ * the catalog.
+ *
+ * Searches share a read lock, so any number of them run at once; adding
+ * an item takes the write lock. Every id list is kept sorted as it is
+ * added to, so a search never changes the index.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class ItemCatalog
+{
+    // Words too common to be worth indexing or searching for.
+    private static final Set<String> stopWords =
+        Set.of("a", "an", "and", "at", "in", "is", "it", "of", "on", "that", "the", "to", "with");
+
+    private HashMap<String, Postings> index;    // item ids by word
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Create an empty catalog.
+     */
+    public ItemCatalog()
+    {
+        index = new HashMap<>();
+    }
+
+    /**
+     * Add an item to the catalog.
+     * @param id The item's id.
+     * @param name The item's name.
+     * @param description The item's description.
+     */
+    public void add(int id, String name, String description)
+    {
+        List<String> words = words(name);
+        for (String word : words(description)) {
+            if (!words.contains(word)) {
+                words.add(word);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (String word : words) {
+                index.computeIfAbsent(word, w -> new Postings()).add(id);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the items whose name or description use every word of a query.
+     * Case and punctuation are ignored, and so are common words like "the".
+     * @param query The words to search for, e.g. "wooden sword".
+     * @param limit The most ids to return.
+     * @return The ids of the matching items, in ascending order. The list
+     *         is empty if nothing matches or the query has no words worth
+     *         searching for.
+     */
+    public int[] search(String query, int limit)
+    {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            return search(words, limit);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search for the items using every one of a number of words. Called
+     * with the read lock held.
+     */
+    private int[] search(List<String> words, int limit)
+    {
+        Postings[] lists = new Postings[words.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = index.get(words.get(i));
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        // Walk the shortest list and look each of its ids up in the others.
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] found = new int[Math.min(limit, lists[0].size)];
+        int count = 0;
+        for (int i = 0; i < lists[0].size && count < found.length; i++) {
+            int id = lists[0].ids[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.length && inAll; j++) {
+                inAll = lists[j].contains(id);
+            }
+            if (inAll) {
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return true if the query has at least one word worth searching for.
+     */
+    public static boolean hasSearchWords(String query)
+    {
+        return !words(query).isEmpty();
+    }
+
+    /**
+     * Split text into lower case words, leaving out stop words and
+     * repeated words.
+     */
+    private static List<String> words(String text)
+    {
+        List<String> words = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && !Character.isLetterOrDigit(text.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && Character.isLetterOrDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end > start) {
+                String word = text.substring(start, end).toLowerCase();
+                if (!stopWords.contains(word) && !words.contains(word)) {
+                    words.add(word);
+                }
+            }
+            start = end;
+        }
+        return words;
+    }
+
+    /**
+     * The ids of the items using one word, in ascending order. Ids are
+     * mostly added in that order, so an id is nearly always appended.
+     */
+    private static class Postings
+    {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id)
+        {
+            int at = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                // Out of order, e.g. an image's items catalogued after
+                // items added since the world started.
+                at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0) {
+                    return;
+                }
+                at = -at - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean contains(int id)
+        {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * An ItemContainer is a place an item can be: a room, or a player's
+ * inventory. Every item knows the container it is in (see
+ * Item.getLocation), so finding where an item is takes a single read.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public interface ItemContainer
+{
+    /**
+     * Take an item out of this container.
+     * @param item The item.
+     * @return true if the item was here and has been removed.
+     */
+    boolean removeItem(Item item);
+}
@@ -0,0 +1,203 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * An ItemIndex holds the items in one place - a room or a player's
+ * inventory. Items are kept in the order they were added, and are also
+ * indexed by name (ignoring case), so adding, removing and finding an
+ * item by the name a player typed take constant time however many items
+ * there are. Several items may have the same name. An item with a name
+ * of several words can also be found by one of its words ("map" for the
+ * "Map of the campus"), as long as no item of another name has it.
+ *
+ * Each index has its own lock: its methods are synchronized, so players
+ * in the same room can add and remove items at the same time. Code that
+ * iterates over the items of an index others may change holds the
+ * index's lock while it does.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class ItemIndex implements Iterable<Item>
+{
+    private LinkedHashSet<Item> items;
+    private HashMap<String, LinkedHashSet<Item>> byName;   // by lower case name
+    // By word of a name: the one item with the word, or a LinkedHashSet
+    // of the items with it, so most words cost no set of their own.
+    private HashMap<String, Object> byWord;
+    private Collection<Item> view;
+
+    /**
+     * Create an empty index.
+     */
+    public ItemIndex()
+    {
+        items = new LinkedHashSet<>();
+        byName = new HashMap<>();
+        byWord = new HashMap<>();
+        view = Collections.unmodifiableCollection(items);
+    }
+
+    /**
+     * Add an item.
+     * @param item The item.
+     * @return true if it was added, false if it was already here.
+     */
+    public synchronized boolean add(Item item)
+    {
+        if (!items.add(item)) {
+            return false;
+        }
+        byName.computeIfAbsent(key(item.getName()), name -> new LinkedHashSet<>(2)).add(item);
+        for (String word : item.getNameWords()) {
+            byWord.merge(word, item, ItemIndex::addToWord);
+        }
+        return true;
+    }
+
+    /**
+     * Remove an item.
+     * @param item The item.
+     * @return true if it was removed, false if it was not here.
+     */
+    public synchronized boolean remove(Item item)
+    {
+        if (!items.remove(item)) {
+            return false;
+        }
+        removeFrom(byName, key(item.getName()), item);
+        for (String word : item.getNameWords()) {
+            byWord.computeIfPresent(word, (w, withWord) -> removeFromWord(withWord, item));
+        }
+        return true;
+    }
+
+    /**
+     * @param item An item.
+     * @return true if the item is here.
+     */
+    public synchronized boolean contains(Item item)
+    {
+        return items.contains(item);
+    }
+
+    /**
+     * Find an item by name, ignoring case, or by a word of its name that
+     * only items of one name have. If several items match, the one that
+     * was added first is returned.
+     * @param name The item's name, or a word of it.
+     * @return The item, or null if there is no item with that name here,
+     *         or the word is in the names of different items.
+     */
+    public synchronized Item find(String name)
+    {
+        String key = key(name);
+        LinkedHashSet<Item> named = byName.get(key);
+        if (named != null) {
+            return named.iterator().next();
+        }
+        Object withWord = byWord.get(key);
+        if (withWord == null || withWord instanceof Item) {
+            return (Item) withWord;
+        }
+        Iterator<Item> matches = asItems(withWord).iterator();
+        Item first = matches.next();
+        while (matches.hasNext()) {
+            if (!matches.next().getName().equalsIgnoreCase(first.getName())) {
+                return null;    // "wood" for a Wood Sword and a Wood Shield
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return The number of items.
+     */
+    public synchronized int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * @return true if there are no items.
+     */
+    public synchronized boolean isEmpty()
+    {
+        return items.isEmpty();
+    }
+
+    /**
+     * @return The items in the order they were added. The collection
+     *         cannot be changed.
+     */
+    public Collection<Item> asCollection()
+    {
+        return view;
+    }
+
+    /**
+     * @return An iterator over the items in the order they were added.
+     */
+    public Iterator<Item> iterator()
+    {
+        return view.iterator();
+    }
+
+    private static void removeFrom(HashMap<String, LinkedHashSet<Item>> index, String key, Item item)
+    {
+        LinkedHashSet<Item> items = index.get(key);
+        items.remove(item);
+        if (items.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Add an item to the items with a word, as HashMap.merge would.
+     */
+    private static Object addToWord(Object withWord, Object item)
+    {
+        if (withWord instanceof Item) {
+            LinkedHashSet<Item> items = new LinkedHashSet<>(4);
+            items.add((Item) withWord);
+            withWord = items;
+        }
+        asItems(withWord).add((Item) item);
+        return withWord;
+    }
+
+    /**
+     * Remove an item from the items with a word.
+     * @return What is left, or null if nothing is.
+     */
+    private static Object removeFromWord(Object withWord, Item item)
+    {
+        if (withWord == item) {
+            return null;
+        }
+        if (withWord instanceof Item) {
+            return withWord;
+        }
+        LinkedHashSet<Item> items = asItems(withWord);
+        items.remove(item);
+        return items.isEmpty() ? null : items;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LinkedHashSet<Item> asItems(Object withWord)
+    {
+        return (LinkedHashSet<Item>) withWord;
+    }
+
+    private static String key(String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
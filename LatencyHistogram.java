@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A LatencyHistogram counts how long operations took, so that percentiles
+ * such as the 99th can be read off afterwards. Values are counted in
+ * log-linear buckets: every power of two is split into 16 equal buckets,
+ * so a percentile is accurate to within about 6% whatever the scale, and
+ * the whole histogram is a fixed array of counters. Recording is one
+ * atomic increment and never blocks, so many threads can share one
+ * histogram.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS get a bucket each; above, 16 per power of two.
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private AtomicLongArray counts;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Count one value.
+     * @param value The value, e.g. a latency in nanoseconds. Negative
+     *              values are counted as 0.
+     */
+    public void record(long value)
+    {
+        counts.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    /**
+     * @return The number of values counted.
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Find the value below which a given percentage of the values lie.
+     * @param percentile The percentage, e.g. 99.9.
+     * @return The highest value in the bucket holding that percentile, or
+     *         0 if nothing has been counted.
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return highestValueIn(BUCKETS - 1);
+    }
+
+    /**
+     * Add the counts of another histogram to this one.
+     * @param other The other histogram.
+     */
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    /**
+     * Forget everything counted so far.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // The top SUB_BUCKET_BITS + 1 bits of the value pick the bucket.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestValueIn(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
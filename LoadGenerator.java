@@ -0,0 +1,405 @@
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The LoadGenerator plays many bot players against one world, inside one
+ * process, to see how the game holds up as the number of sessions rises.
+ * Every bot is a real Game session: its commands go through the Parser
+ * from an in-memory input stream and are executed as a player's would
+ * be, and its output is written to a stream that only counts the bytes.
+ * A bot either plays a fixed script or walks the map at random.
+ *
+ * For each run it reports the commands per second, the latency of each
+ * kind of command (50th, 99th and 99.9th percentile, reading the command
+ * included) and how much of the run was spent collecting garbage. To
+ * measure runs with 1, 10, 100 and 1000 bots walking at random:
+ *     java LoadGenerator walk 1 10 100 1000
+ * or playing the built-in script:
+ *     java LoadGenerator script 1 10 100 1000
+ * To measure 1000 bots walking at random on a 100 by 100 grid of rooms
+ * with the world unsharded (0) and split among 1, 2, 4 and 8 shards
+ * (see WorldShards):
+ *     java LoadGenerator shards 0 1 2 4 8
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class LoadGenerator
+{
+    private static final CommandWord[] commandWords = CommandWord.values();
+
+    private World world;
+    private EnumMap<CommandWord, LatencyHistogram> latencies;
+    private AtomicLong outputBytes;
+
+    /**
+     * Create a load generator for a world.
+     * @param world The world all bots play in.
+     */
+    public LoadGenerator(World world)
+    {
+        this.world = world;
+        world.start();
+        latencies = new EnumMap<>(CommandWord.class);
+        for (CommandWord word : commandWords) {
+            latencies.put(word, new LatencyHistogram());
+        }
+        outputBytes = new AtomicLong();
+    }
+
+    /**
+     * Run bots that all play the same script.
+     * @param bots The number of bots.
+     * @param script The commands each bot plays, one per line. A bot that
+     *               reaches the end of the script quits.
+     * @return The results of the run.
+     */
+    public Result runScripted(int bots, String script)
+        throws InterruptedException, ExecutionException
+    {
+        byte[] input = script.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> inputs = new ArrayList<>();
+        for (int i = 0; i < bots; i++) {
+            inputs.add(input);
+        }
+        return run(inputs);
+    }
+
+    /**
+     * Run bots that each walk the map at random.
+     * @param bots The number of bots.
+     * @param commands The number of commands each bot plays before quitting.
+     * @param seed The seed of the walks, so that runs can be repeated.
+     * @return The results of the run.
+     */
+    public Result runRandomWalk(int bots, int commands, long seed)
+        throws InterruptedException, ExecutionException
+    {
+        Random random = new Random(seed);
+        List<byte[]> inputs = new ArrayList<>();
+        for (int i = 0; i < bots; i++) {
+            inputs.add(randomWalk(commands, random).getBytes(StandardCharsets.UTF_8));
+        }
+        return run(inputs);
+    }
+
+    /**
+     * Play one session per input on its own thread, timing every command.
+     */
+    private Result run(List<byte[]> inputs) throws InterruptedException, ExecutionException
+    {
+        for (LatencyHistogram histogram : latencies.values()) {
+            histogram.reset();
+        }
+        outputBytes.set(0);
+        AtomicLong commands = new AtomicLong();
+        ExecutorService executor = SessionHost.newSessionExecutor();
+        long gcTimeBefore = gcMillis();
+        long gcCountBefore = gcCount();
+        long start = System.nanoTime();
+
+        List<Future<?>> running = new ArrayList<>();
+        for (byte[] input : inputs) {
+            running.add(executor.submit(() -> {
+                commands.addAndGet(playBot(input));
+            }));
+        }
+        for (Future<?> bot : running) {
+            bot.get();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return new Result(inputs.size(), commands.get(), elapsed, gcMillis() - gcTimeBefore,
+                          gcCount() - gcCountBefore, outputBytes.get(), latencies);
+    }
+
+    /**
+     * Play one bot's session to the end.
+     * @return The number of commands played.
+     */
+    private long playBot(byte[] input)
+    {
+        CountingOutputStream output = new CountingOutputStream();
+        Game game = new Game(world, new ByteArrayInputStream(input), new PrintStream(output));
+        game.begin();
+        long commands = 0;
+        while (true) {
+            long start = System.nanoTime();
+            Command command = game.step();
+            if (command == null) {
+                break;
+            }
+            latencies.get(command.getCommandWord()).record(System.nanoTime() - start);
+            commands++;
+        }
+        game.finish();
+        outputBytes.addAndGet(output.count);
+        return commands;
+    }
+
+    /**
+     * Make up a random walk from the start room: mostly going through an
+     * exit of the room the bot is in, sometimes looking around or going
+     * back the way it came.
+     */
+    private String randomWalk(int commands, Random random)
+    {
+        StringBuilder script = new StringBuilder();
+        Room room = world.getStartRoom();
+        Room previous = null;
+        for (int i = 0; i < commands - 1; i++) {
+            int choice = random.nextInt(10);
+            List<Direction> exits = world.getGraph().getExitDirections(room.getId());
+            if (choice < 2 || exits.isEmpty()) {
+                script.append("look\n");
+            }
+            else if (choice < 3 && previous != null) {
+                script.append("back\n");
+                room = previous;
+                previous = null;
+            }
+            else {
+                Direction direction = exits.get(random.nextInt(exits.size()));
+                script.append("go ").append(direction).append('\n');
+                previous = room;
+                room = room.getExit(direction);
+            }
+        }
+        script.append("quit\n");
+        return script.toString();
+    }
+
+    private static long gcMillis()
+    {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * The results of one run.
+     */
+    public static class Result
+    {
+        private int bots;
+        private long commands;
+        private long elapsedNanos;
+        private long gcMillis;
+        private long gcCount;
+        private long outputBytes;
+        private EnumMap<CommandWord, LatencyHistogram> latencies;
+
+        private Result(int bots, long commands, long elapsedNanos, long gcMillis, long gcCount,
+                       long outputBytes, EnumMap<CommandWord, LatencyHistogram> latencies)
+        {
+            this.bots = bots;
+            this.commands = commands;
+            this.elapsedNanos = elapsedNanos;
+            this.gcMillis = gcMillis;
+            this.gcCount = gcCount;
+            this.outputBytes = outputBytes;
+            // Copy the histograms, as the generator reuses its own.
+            this.latencies = new EnumMap<>(CommandWord.class);
+            for (CommandWord word : latencies.keySet()) {
+                LatencyHistogram copy = new LatencyHistogram();
+                copy.add(latencies.get(word));
+                this.latencies.put(word, copy);
+            }
+        }
+
+        /**
+         * @return The commands played per second, across all bots.
+         */
+        public double getThroughput()
+        {
+            return commands * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return The share of the run spent in garbage collection, in percent.
+         */
+        public double getGcPercent()
+        {
+            return 100.0 * gcMillis * 1_000_000 / elapsedNanos;
+        }
+
+        /**
+         * @param word A command word.
+         * @return The latencies of the commands with that word, in nanoseconds.
+         */
+        public LatencyHistogram getLatencies(CommandWord word)
+        {
+            return latencies.get(word);
+        }
+
+        /**
+         * Print the results.
+         * @param out Where to print them.
+         */
+        public void print(PrintStream out)
+        {
+            out.printf("%d bots: %,.0f commands/sec, %,d commands, %.1f ms%n",
+                       bots, getThroughput(), commands, elapsedNanos / 1e6);
+            out.printf("  gc: %d collections, %d ms (%.1f%% of the run); output %.0f bytes/command%n",
+                       gcCount, gcMillis, getGcPercent(), (double) outputBytes / Math.max(1, commands));
+            out.printf("  %-10s %10s %10s %10s %10s%n", "command", "count", "p50 us", "p99 us", "p999 us");
+            for (CommandWord word : commandWords) {
+                LatencyHistogram histogram = latencies.get(word);
+                long count = histogram.getCount();
+                if (count > 0) {
+                    out.printf("  %-10s %,10d %10.1f %10.1f %10.1f%n", word, count,
+                               histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                               histogram.getPercentile(99.9) / 1e3);
+                }
+            }
+        }
+    }
+
+    /**
+     * Output that is thrown away, but counted.
+     */
+    private static class CountingOutputStream extends OutputStream
+    {
+        private long count;
+
+        @Override
+        public void write(int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+            count += length;
+        }
+    }
+
+    /**
+     * Run the load generator for a rising number of bots.
+     * @param args "walk" or "script", then the numbers of bots to run
+     *             (default 1 10 100 1000).
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length > 0 && args[0].equals("shards")) {
+            sweepShards(args);
+            return;
+        }
+        boolean walk = args.length == 0 || !args[0].equals("script");
+        int[] botCounts = { 1, 10, 100, 1000 };
+        if (args.length > 1) {
+            botCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                botCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            script.append("look\ngo east\ngo west\ngo north\nback\ngo south\n");
+        }
+        script.append("quit\n");
+
+        try (World world = new World()) {
+            LoadGenerator generator = new LoadGenerator(world);
+            // Warm up, so the first run is not measuring the JIT.
+            generator.runRandomWalk(100, 300, 0);
+            for (int bots : botCounts) {
+                Result result = walk ? generator.runRandomWalk(bots, 300, bots)
+                                     : generator.runScripted(bots, script.toString());
+                result.print(System.out);
+            }
+        }
+    }
+
+    /**
+     * Run 1000 random walkers on the world split among a rising number of
+     * shards.
+     * @param args "shards", then the shard counts (default 0 1 2 4 8),
+     *             where 0 runs the world unsharded.
+     */
+    private static void sweepShards(String[] args) throws Exception
+    {
+        int[] shardCounts = { 0, 1, 2, 4, 8 };
+        if (args.length > 1) {
+            shardCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                shardCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        World world = gridWorld(100);
+        LoadGenerator generator = new LoadGenerator(world);
+        generator.runRandomWalk(100, 300, 0);
+        for (int count : shardCounts) {
+            WorldShards shards = count > 0 ? new WorldShards(world.getGraph(), count) : null;
+            world.setShards(shards);
+            Result result = generator.runRandomWalk(1000, 300, 1);
+            System.out.println(shards != null ? shards : "unsharded");
+            result.print(System.out);
+            if (shards != null) {
+                shards.shutdown();
+            }
+        }
+        world.setShards(null);
+        world.close();
+    }
+
+    /**
+     * @return A world of side by side rooms, each with exits to its
+     *         neighbours, starting in the middle.
+     */
+    private static World gridWorld(int side)
+    {
+        WorldGraph graph = new WorldGraph(side * side);
+        Room[] rooms = new Room[side * side];
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = graph.addRoom("in room " + i / side + "," + i % side + " of the grid");
+        }
+        for (int i = 0; i < rooms.length; i++) {
+            int row = i / side;
+            int column = i % side;
+            if (row > 0) {
+                rooms[i].setExit(Direction.NORTH, rooms[i - side]);
+            }
+            if (row < side - 1) {
+                rooms[i].setExit(Direction.SOUTH, rooms[i + side]);
+            }
+            if (column > 0) {
+                rooms[i].setExit(Direction.WEST, rooms[i - 1]);
+            }
+            if (column < side - 1) {
+                rooms[i].setExit(Direction.EAST, rooms[i + 1]);
+            }
+        }
+        return new World(graph, rooms[rooms.length / 2 + side / 2]);
+    }
+}
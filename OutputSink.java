@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * An OutputSink collects what one session prints in response to a
+ * command and sends it to the player in one write when the response is
+ * complete (the parser flushes it just before waiting for the next
+ * command). Printing is only appending to a buffer, with no locking or
+ * flushing per line.
+ *
+ * The write to the player blocks until the player's connection has taken
+ * the bytes, so a player who reads slowly holds up only their own
+ * session, which does not read their next command until the response is
+ * out. A very long response is sent in parts, so a session never buffers
+ * more than about MAX_BUFFERED characters.
+ *
+ * Only the session's own thread may print or flush. Other threads, like
+ * the timer that ends a session, leave a note for the session to print
+ * instead of writing to the player themselves, so that they never wait
+ * for a slow connection.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class OutputSink
+{
+    /** Buffered output is sent once there is more than this much of it. */
+    public static final int MAX_BUFFERED = 64 * 1024;
+
+    private static final String newLine = System.lineSeparator();
+
+    private OutputStream out;
+    private StringBuilder response;
+    private CharsetEncoder encoder;
+    private char[] chars;           // reused for copying each response
+    private ByteBuffer bytes;       // reused for encoding each response
+
+    /**
+     * Create a sink writing to a stream.
+     * @param out The stream, e.g. the player's connection.
+     */
+    public OutputSink(OutputStream out)
+    {
+        this.out = out;
+        response = new StringBuilder(256);
+        encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = new char[256];
+        bytes = ByteBuffer.allocate(1024);
+    }
+
+    /**
+     * Add text to the response.
+     * @param text The text.
+     */
+    public void print(String text)
+    {
+        response.append(text);
+        if (response.length() > MAX_BUFFERED) {
+            flush();
+        }
+    }
+
+    /**
+     * Add a line of text to the response.
+     * @param text The text, without the line break.
+     */
+    public void println(String text)
+    {
+        response.append(text).append(newLine);
+        if (response.length() > MAX_BUFFERED) {
+            flush();
+        }
+    }
+
+    /**
+     * Add an empty line to the response.
+     */
+    public void println()
+    {
+        response.append(newLine);
+    }
+
+    /**
+     * Add formatted text to the response, as String.format would format it.
+     * @param format The format.
+     * @param args The values to format.
+     */
+    public void printf(String format, Object... args)
+    {
+        print(String.format(format, args));
+    }
+
+    /**
+     * Send the response so far to the player, waiting until it has been
+     * written.
+     */
+    public void flush()
+    {
+        if (response.length() == 0) {
+            return;
+        }
+        // Encoding from an array is much faster than from a StringBuilder.
+        int length = response.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        response.getChars(0, length, chars, 0);
+        encode(CharBuffer.wrap(chars, 0, length));
+        write();
+        response.setLength(0);
+    }
+
+    /**
+     * Throw away the response so far.
+     */
+    public void clear()
+    {
+        response.setLength(0);
+    }
+
+    /**
+     * Encode text into bytes[], growing it as needed.
+     */
+    private void encode(CharBuffer text)
+    {
+        int needed = (int) (text.remaining() * encoder.maxBytesPerChar());
+        if (bytes.capacity() < needed) {
+            bytes = ByteBuffer.allocate(Math.max(needed, bytes.capacity() * 2));
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(text, bytes, true);
+        encoder.flush(bytes);
+    }
+
+    /**
+     * Write the encoded bytes to the player.
+     */
+    private void write()
+    {
+        try {
+            out.write(bytes.array(), 0, bytes.position());
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,82 +1,174 @@
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
 
 /**
  * This class is part of the "World of Zuul" application. 
  * "World of Zuul" is a very simple, text based adventure game.  
  * 
  * This parser reads user input and tries to interpret it as an "Adventure"
- * command. Every time it is called it reads a line from the terminal and
+ * command. Every time it is called it reads a line from its input and
  * tries to interpret the line as a two-word command. It returns the command
  * as an object of class Command.
  *
  * The parser has a set of known command words. It checks user input against
  * the known commands, and if the input is not one of the known commands, it
  * returns a command object that is marked as an unknown command.
+ *
+ * Lines longer than MAX_LINE_LENGTH are skipped with a short message, so
+ * that a client sending a line without end cannot fill the server's memory.
  * 
  * @author  Omar Malik
  * @version 2023.10.18
  */
 public class Parser 
 {
+    /** The longest line read as a command. Longer lines are skipped. */
+    public static final int MAX_LINE_LENGTH = 1024;
+    // readLine's result for a line that was too long.
+    private static final int TOO_LONG = -2;
+
     private CommandWords commands;  // holds all valid command words
-    private Scanner reader;         // source of command input
+    private CommandTokenizer tokenizer; // splits lines into commands
+    private Reader reader;          // source of command input
+    private OutputSink out;         // where the prompt is printed
+
+    // Input is read in blocks into input[], and each line is copied into
+    // line[], which is reused for every command.
+    private char[] input;
+    private int inputPos;
+    private int inputLimit;
+    private char[] line;
+    private CharBuffer lineView;
 
     /**
      * Create a parser to read from the terminal window.
      */
     public Parser() 
+    {
+        this(System.in, new OutputSink(System.out));
+    }
+
+    /**
+     * Create a parser reading commands from the given stream.
+     * @param in The stream commands are read from.
+     * @param out The sink the prompt is printed to. It is flushed before
+     *            each command is read, which sends the response to the
+     *            previous command.
+     */
+    public Parser(InputStream in, OutputSink out)
     {
         commands = new CommandWords();
-        reader = new Scanner(System.in);
+        tokenizer = new CommandTokenizer(commands);
+        reader = new InputStreamReader(in);
+        this.out = out;
+        input = new char[4096];
+        line = new char[128];
+        lineView = CharBuffer.wrap(line);
     }
 
     /**
-     * @return The next command from the user.
+     * @return The next command from the user. When the input is exhausted
+     *         a QUIT command is returned.
      */
     public Command getCommand() 
     {
-        String inputLine;   // will hold the full input line
-        String word1 = null;
-        String word2 = null;
-
-        System.out.print("> ");     // print prompt
+        out.print("> ");     // print prompt
+        out.flush();         // and send it with the last response
 
-        inputLine = reader.nextLine();
+        int length = readLine();
+        while (length == TOO_LONG) {
+            out.println("That line is too long.");
+            out.print("> ");
+            out.flush();
+            length = readLine();
+        }
+        if (length < 0) {
+            return CommandTokenizer.plainCommand(CommandWord.QUIT);
+        }
+        lineView.limit(length).position(0);
+        return tokenizer.tokenize(lineView);
+    }
 
-        // Find up to two words on the line.
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            word1 = tokenizer.next();      // get first word
-            if(tokenizer.hasNext()) {
-                word2 = tokenizer.next();      // get second word
-                // note: we just ignore the rest of the input line.
+    /**
+     * Read the next line of input into line[]. The rest of a line longer
+     * than MAX_LINE_LENGTH is read and thrown away, never stored.
+     * @return The length of the line, -1 at the end of the input, or
+     *         TOO_LONG if the line was too long.
+     */
+    private int readLine()
+    {
+        int length = 0;
+        boolean tooLong = false;
+        while (true) {
+            if (inputPos == inputLimit && !fillInput()) {
+                return tooLong ? TOO_LONG : length > 0 ? length : -1;
+            }
+            char c = input[inputPos++];
+            if (c == '\n') {
+                return tooLong ? TOO_LONG : length;
+            }
+            if (c == '\r' || tooLong) {
+                continue;
             }
+            if (length == MAX_LINE_LENGTH) {
+                tooLong = true;
+                continue;
+            }
+            if (length == line.length) {
+                growLine();
+            }
+            line[length++] = c;
         }
-        
-           // Handle the "look" command.
-        if (word1.equalsIgnoreCase("look")) {
-        return new Command(CommandWord.LOOK, null);
+    }
+
+    /**
+     * Read the next block of input.
+     * @return false at the end of the input.
+     */
+    private boolean fillInput()
+    {
+        try {
+            int read = reader.read(input);
+            inputPos = 0;
+            inputLimit = Math.max(read, 0);
+            return read > 0;
         }
-        
-        // Handle new commands for the trap door
-        if (word1.equalsIgnoreCase("open") && word2.equalsIgnoreCase("trapdoor"))
-        {
-            return new Command(CommandWord.OPEN_TRAPDOOR, null);
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        if (word1.equalsIgnoreCase("close") && word2.equalsIgnoreCase("trapdoor"))
-        {
-            return new Command(CommandWord.CLOSE_TRAPDOOR, null);
-        }
-        
-        return new Command(commands.getCommandWord(word1), word2);
+    /**
+     * Make room for a longer input line.
+     */
+    private void growLine()
+    {
+        char[] longer = new char[Math.min(line.length * 2, MAX_LINE_LENGTH)];
+        System.arraycopy(line, 0, longer, 0, line.length);
+        line = longer;
+        lineView = CharBuffer.wrap(line);
     }
 
     /**
      * Print out a list of valid command words.
+     * @param out The sink to print to.
+     */
+    public void showCommands(OutputSink out) {
+    commands.showAll(out);
+    }
+
+    /**
+     * Find the command word a player probably meant by a word that is
+     * not one.
+     * @param typed The word the player typed.
+     * @return The closest command word, or null if none is close enough.
      */
-    public void showCommands() {
-    commands.showAll();
+    public CommandWord suggestCommand(String typed) {
+        return commands.suggest(typed);
     }
 
 }
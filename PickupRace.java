@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * PickupRace measures what happens when many players reach for the same
+ * items at once. In each round a room is filled with items and a few
+ * hundred threads, each with its own player in that room, are let go at
+ * the same moment to pick up every item. It checks that every item ended
+ * up with exactly one player and reports how long the pickups took.
+ *
+ *     java PickupRace [threads] [items] [rounds]
+ *
+ * The defaults are 200 threads racing for 100 items, for 200 rounds.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class PickupRace
+{
+    /**
+     * Run the race and print the results.
+     * @param args Optionally the number of threads, items and rounds.
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int itemCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        // The first rounds warm up the JIT and are not counted.
+        int warmup = Math.max(1, rounds / 10);
+        for (int i = 0; i < warmup; i++) {
+            race(threads, itemCount);
+        }
+        LatencyHistogram roundNanos = new LatencyHistogram();
+        long attempts = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            long roundStart = System.nanoTime();
+            attempts += race(threads, itemCount);
+            roundNanos.record(System.nanoTime() - roundStart);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%d threads, %d items, %d rounds: every item won exactly once%n",
+                          threads, itemCount, rounds);
+        System.out.printf("  %,.0f pickup attempts/sec, %.0f ns per attempt%n",
+                          attempts * 1e9 / elapsed, (double) elapsed / attempts);
+        System.out.printf("  round p50 %.2f ms, p99 %.2f ms%n",
+                          roundNanos.getPercentile(50) / 1e6, roundNanos.getPercentile(99) / 1e6);
+    }
+
+    /**
+     * Run one round.
+     * @return The number of pickups attempted.
+     * @throws IllegalStateException if an item was won by no player or by
+     *         more than one.
+     */
+    private static long race(int threads, int itemCount) throws InterruptedException
+    {
+        WorldGraph graph = new WorldGraph();
+        Room room = graph.addRoom("in a crowded room");
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            Item item = new Item("Coin " + i, "A gold coin.", 0.01);
+            room.addItem(item);
+            items.add(item);
+        }
+
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong wins = new AtomicLong();
+        List<Player> players = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Player player = new Player(room, Double.MAX_VALUE, Integer.MAX_VALUE);
+            players.add(player);
+            // Start at different items, so the threads meet everywhere.
+            int offset = t * itemCount / threads;
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < itemCount; i++) {
+                    if (player.pickUpItem(items.get((offset + i) % itemCount))) {
+                        wins.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            running.add(thread);
+        }
+        ready.await();
+        go.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+
+        check(room, items, players, wins.get());
+        return (long) threads * itemCount;
+    }
+
+    /**
+     * Check that every item is in the inventory of exactly one player.
+     */
+    private static void check(Room room, List<Item> items, List<Player> players, long wins)
+    {
+        if (wins != items.size() || !room.getItems().isEmpty()) {
+            throw new IllegalStateException(wins + " pickups won for " + items.size() + " items");
+        }
+        int carried = 0;
+        for (Player player : players) {
+            carried += player.getInventory().size();
+            for (Item item : player.getInventory()) {
+                if (item.getLocation() != player) {
+                    throw new IllegalStateException(item.getName() + " is carried by two players");
+                }
+            }
+        }
+        if (carried != items.size()) {
+            throw new IllegalStateException(carried + " items carried, " + items.size() + " placed");
+        }
+    }
+}
@@ -1,26 +1,93 @@
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 /**
  * The Player class represents the player in the "World of Zuul" game.
  * It holds information about the current room and manages the player's inventory.
  *
- * The player can pick up and drop items within the game.
+ * The player can pick up and drop items within the game, and put them in
+ * and take them out of bags. A player can only carry so many items and
+ * so much weight. The weight carried is kept as a running total, which
+ * bags update as their contents change, so checking a pickup against
+ * the limit never adds up the inventory.
+ *
+ * Several players may reach for the same item at once. Picking an item
+ * up moves its location to the player in one compare-and-set (see Item),
+ * so exactly one of them gets it, without a lock shared by all players.
  * 
  * @author  Omar Malik
  * @version 2023.10.18
  */
-public class Player {
+public class Player implements ItemContainer {
+    /** The most weight a player carries unless told otherwise, in kilograms. */
+    public static final double DEFAULT_MAX_WEIGHT = 10.0;
+    /** The most items a player carries unless told otherwise. */
+    public static final int DEFAULT_MAX_COUNT = 10;
+
     private Room currentRoom;
-    private List<Item> inventory;
+    private ItemIndex inventory;
+    private double maxWeight;
+    private int maxCount;
+    private double carriedWeight; // Running total of the inventory's weight
+    private Map<Item, ItemContainer> placedItems; // Items this player put down, and where
+    private String name;
+    private EventInbox inbox; // What happened around the player, not read yet
 
     /**
-     * Constructs a new Player instance with the starting room.
+     * Constructs a new Player instance with the starting room and the
+     * default carry limits.
      *
      * @param startingRoom The room where the player begins the game.
      */
     public Player(Room startingRoom) {
+        this(startingRoom, DEFAULT_MAX_WEIGHT, DEFAULT_MAX_COUNT);
+    }
+
+    /**
+     * Constructs a new Player instance with the starting room and limits
+     * on what the player can carry.
+     *
+     * @param startingRoom The room where the player begins the game.
+     * @param maxWeight The most weight the player can carry, in kilograms.
+     * @param maxCount The most items the player can carry. A bag counts
+     *                 as one item, whatever is in it.
+     */
+    public Player(Room startingRoom, double maxWeight, int maxCount) {
         currentRoom = startingRoom;
-        inventory = new ArrayList<>();
+        inventory = new ItemIndex();
+        this.maxWeight = maxWeight;
+        this.maxCount = maxCount;
+        placedItems = new LinkedHashMap<>();
+        name = "Someone";
+        inbox = new EventInbox();
+    }
+
+    /**
+     * Retrieves the name other players see.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name other players see.
+     *
+     * @param name The name.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves what happened around the player that they have not read.
+     *
+     * @return The player's inbox.
+     */
+    public EventInbox getInbox() {
+        return inbox;
     }
 
     /**
@@ -44,25 +111,146 @@ public class Player {
     /**
      * Retrieves the player's inventory of items.
      *
-     * @return The list of items in the player's inventory.
+     * @return The items in the player's inventory, in the order they were
+     *         picked up. The collection cannot be changed.
+     */
+    public Collection<Item> getInventory() {
+        return inventory.asCollection();
+    }
+
+    /**
+     * Retrieves the total weight of everything the player carries.
+     *
+     * @return The weight in kilograms.
+     */
+    public double getCarriedWeight() {
+        return carriedWeight;
+    }
+
+    /**
+     * Retrieves the most weight the player can carry.
+     *
+     * @return The weight in kilograms.
      */
-    public List<Item> getInventory() {
-        return inventory;
+    public double getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Retrieves the most items the player can carry.
+     *
+     * @return The number of items.
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Checks whether the player has room for one more item.
+     *
+     * @return true if the player carries fewer items than the limit.
+     */
+    public boolean hasRoomForItem() {
+        return inventory.size() < maxCount;
+    }
+
+    /**
+     * Checks whether the player could carry an item as well as what they
+     * already carry.
+     *
+     * @param item The item.
+     * @return true if neither the weight nor the item limit would be passed.
+     */
+    public boolean canCarry(Item item) {
+        return hasRoomForItem() && carriedWeight + item.getWeight() <= maxWeight;
+    }
+
+    /**
+     * Finds an item in the inventory by the name a player typed.
+     *
+     * @param name The item's name, in any case.
+     * @return The item, or null if the player carries no item with that name.
+     */
+    public Item findItem(String name) {
+        return inventory.find(name);
     }
 
     /**
      * Picks up an item and adds it to the player's inventory.
      *
      * @param item The item to pick up.
-     * @return true if the item was successfully picked up, false otherwise.
+     * @return true if the item was successfully picked up, false if it is
+     *         not here or the player cannot carry it.
      */
     public boolean pickUpItem(Item item) {
-        if (currentRoom.hasItem(item)) {
-            inventory.add(item);
-            currentRoom.removeItem(item);
-            return true;
+        if (item instanceof Bag) {
+            // Hold the bag still, so something put in it meanwhile is
+            // counted either in the weight carried now or in a change
+            // passed up to this player later, not in both.
+            synchronized (item) {
+                return pickUp(item);
+            }
+        }
+        return pickUp(item);
+    }
+
+    private boolean pickUp(Item item) {
+        // Whoever moves the item from the room to themselves first gets
+        // it; anyone else reaching for it at the same time fails here.
+        if (item.getLocation() != currentRoom || !canCarry(item)
+                || !item.moveLocation(currentRoom, this)) {
+            return false;
+        }
+        carry(item);
+        currentRoom.removeItem(item);
+        placedItems.remove(item);
+        return true;
+    }
+
+    /**
+     * Takes an item out of a bag the player carries or that lies in the
+     * current room, and adds it to the inventory.
+     *
+     * @param item The item to take.
+     * @param bag The bag it is in.
+     * @return true if the item was taken, false if it is not in the bag,
+     *         the bag is out of reach or the player cannot carry the item.
+     */
+    public boolean takeItem(Item item, Bag bag) {
+        if (item.getLocation() != bag || !canReach(bag)) {
+            return false;
+        }
+        // Out of a bag the player carries, only the item count changes.
+        boolean carried = holderOf(bag) == this;
+        if (carried ? !hasRoomForItem() : !canCarry(item)) {
+            return false;
+        }
+        if (!item.moveLocation(bag, this)) {
+            return false;   // someone else took it first
         }
-        return false;
+        carry(item);
+        bag.removeItem(item);
+        placedItems.remove(item);
+        return true;
+    }
+
+    /**
+     * Puts an item the player carries into a bag the player carries or
+     * that lies in the current room.
+     *
+     * @param item The item to put away.
+     * @param bag The bag.
+     * @return true if the item was put in the bag, false if the player
+     *         does not carry the item, the bag is out of reach or the item
+     *         does not fit.
+     */
+    public boolean putItem(Item item, Bag bag) {
+        if (!inventory.contains(item) || !canReach(bag) || !bag.putItem(item, this)) {
+            return false;
+        }
+        uncarry(item);
+        placedItems.put(item, bag);
+        return true;
     }
 
     /**
@@ -72,11 +260,166 @@ public class Player {
      * @return true if the item was successfully dropped, false otherwise.
      */
     public boolean dropItem(Item item) {
-        if (inventory.contains(item)) {
-            inventory.remove(item);
-            currentRoom.addItem(item);
+        if (!inventory.contains(item) || !currentRoom.addItem(item, this)) {
+            return false;
+        }
+        uncarry(item);
+        placedItems.put(item, currentRoom);
+        return true;
+    }
+
+    /**
+     * Removes an item from the inventory without putting it anywhere.
+     *
+     * @param item The item to remove.
+     * @return true if the player was carrying the item, false otherwise.
+     */
+    public boolean removeItem(Item item) {
+        if (!inventory.contains(item)) {
+            return false;
+        }
+        uncarry(item);
+        item.moveLocation(this, null);
+        return true;
+    }
+
+    /**
+     * Puts an item back into the inventory when a saved player is
+     * restored. An item lying in a room or in a bag nobody carries is
+     * taken from there, with the same compare-and-set as picking it up,
+     * so it cannot be lost to a player picking it up at the same time.
+     * An item another player carries stays with them.
+     *
+     * @param item The item the player was carrying.
+     * @return true if the player carries the item now, false if another
+     *         player has it.
+     */
+    boolean restoreItem(Item item) {
+        while (true) {
+            ItemContainer location = item.getLocation();
+            if (location == this) {
+                return true;
+            }
+            Player carrier = carrierOf(item);
+            if (carrier != null && carrier != this) {
+                return false;
+            }
+            if (item.moveLocation(location, this)) {
+                carry(item);
+                if (location != null) {
+                    location.removeItem(item);
+                }
+                return true;
+            }
+            // It was moved in the meantime; look where it is now.
+        }
+    }
+
+    /**
+     * Hands back everything the player carries or has put down, each item
+     * to the room or bag it was first put in, so that a restored snapshot
+     * starts from nothing. A carried item whose bag has no room for it is
+     * dropped here instead. An item someone else has moved since the
+     * player put it down stays where it is now.
+     */
+    void returnItems() {
+        for (Item item : new ArrayList<>(inventory.asCollection())) {
+            if (!sendHome(item, this)) {
+                dropItem(item);
+            }
+        }
+        for (Map.Entry<Item, ItemContainer> entry : placedItems.entrySet()) {
+            sendHome(entry.getKey(), entry.getValue());
+        }
+        placedItems.clear();
+    }
+
+    /**
+     * Moves an item from where it is expected to be to its home.
+     *
+     * @return true if the item is home now.
+     */
+    private static boolean sendHome(Item item, ItemContainer from) {
+        ItemContainer home = item.getHome();
+        if (home == from) {
             return true;
         }
-        return false;
+        boolean moved = home instanceof Bag ? ((Bag) home).putItem(item, from)
+                : home instanceof Room && ((Room) home).addItem(item, from);
+        if (moved) {
+            from.removeItem(item);
+        }
+        return moved;
+    }
+
+    /**
+     * Retrieves the items this player has dropped or put in bags, and where
+     * they were put, so that these changes to the world can be saved.
+     *
+     * @return The items and their rooms or bags, in the order they were put
+     *         there.
+     */
+    Map<Item, ItemContainer> getPlacedItems() {
+        return placedItems;
+    }
+
+    /**
+     * Adds a change in the weight of a carried bag's contents to the total.
+     *
+     * @param change The change in kilograms.
+     */
+    synchronized void weightChanged(double change) {
+        carriedWeight += change;
+    }
+
+    /**
+     * Adds an item to the inventory and its weight to the total.
+     */
+    private synchronized void carry(Item item) {
+        if (inventory.add(item)) {
+            carriedWeight += item.getWeight();
+        }
+    }
+
+    /**
+     * Removes an item from the inventory and its weight from the total.
+     */
+    private synchronized void uncarry(Item item) {
+        if (inventory.remove(item)) {
+            // Start again from exactly nothing once the inventory is empty.
+            carriedWeight = inventory.isEmpty() ? 0 : carriedWeight - item.getWeight();
+        }
+    }
+
+    /**
+     * Checks whether a bag is carried by the player or lies in the current
+     * room, possibly inside other bags.
+     */
+    private boolean canReach(Bag bag) {
+        ItemContainer holder = holderOf(bag);
+        return holder == this || holder == currentRoom;
+    }
+
+    /**
+     * Finds the player that carries an item, possibly inside bags.
+     *
+     * @param item The item.
+     * @return The player, or null if the item lies in a room or nowhere.
+     */
+    static Player carrierOf(Item item) {
+        ItemContainer holder = holderOf(item);
+        return holder instanceof Player ? (Player) holder : null;
+    }
+
+    /**
+     * Finds the room or player that holds an item, looking through any
+     * bags it is inside.
+     */
+    private static ItemContainer holderOf(Item item) {
+        ItemContainer container = item.getLocation();
+        while (container instanceof Bag) {
+            container = ((Bag) container).getLocation();
+        }
+        return container;
     }
 }
@@ -1,8 +1,6 @@
-import java.util.Set;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Class Room - a room in an adventure game.
  *
@@ -10,42 +8,104 @@ import java.util.List;
  * "World of Zuul" is a very simple, text based adventure game.  
  *
  * A "Room" represents one location in the scenery of the game.  It is 
- * connected to other rooms via exits.  For each existing exit, the room 
- * stores a reference to the neighboring room.
+ * connected to other rooms via exits.  The exits, items and trap door of
+ * a room are kept in the WorldGraph the room belongs to; a Room is a small
+ * view onto that store, identified by its id.
+ *
+ * The room also knows which players are in it, so that they can be told
+ * what the others do (see RoomEvents).
+ *
+ * The long description is rendered once and cached, together with the
+ * version of the room it was rendered from. Every change to the room
+ * (items, exits, trap door) bumps the version once it is made, and a
+ * cached text is only used while its version is the room's, so looking
+ * at an unchanged room costs two reads, and text rendered while another
+ * thread changed the room is never used after the change.
+ * The names of the room's exits and items are indexed for suggestions
+ * ("Did you mean east?") the first time a player mistypes one, and the
+ * index is kept by version in the same way.
  * 
  * @author  Omar Malik
  * @version 2023.10.18
  */
 
-public class Room 
+public class Room implements ItemContainer
 {
+    private WorldGraph graph; // stores the exits, items and trap door
+    private int id;
     private String description;
-    private HashMap<String, Room> exits;        // stores exits of this room.
-    private List<Item> items; // Use a List to store multiple items
-    private TrapDoor trapDoor; // A one-way trap door
+    private final AtomicInteger version = new AtomicInteger(); // Bumped on every change
+    private volatile Rendered longDescription; // Cached, with the version it shows
+    private volatile Suggestions suggestions; // Built when needed, with its version
     
     /**
      * Create a room described "description". Initially, it has
      * no exits. "description" is something like "a kitchen" or
-     * "an open court yard".
+     * "an open court yard". Rooms are created by WorldGraph.addRoom.
+     * @param graph The world graph the room belongs to.
+     * @param id The room's id in the graph.
+     * @param description The room's description.
+     */
+    Room(WorldGraph graph, int id, String description) 
+    {
+        this.graph = graph;
+        this.id = id;
+        this.description = description;
+    }
+
+    /**
+     * Set the room's description. Used while a world is being loaded,
+     * for rooms that were used before they were declared.
      * @param description The room's description.
      */
-    public Room(String description) 
+    void setDescription(String description)
     {
         this.description = description;
-        exits = new HashMap<>();
-        items = new ArrayList<>(); // Initialize the collection
-        trapDoor = new TrapDoor();
+        changed();
+    }
+
+    /**
+     * @return The room's id in its world graph.
+     */
+    public int getId()
+    {
+        return id;
     }
 
     /**
      * Define an exit from this room.
-     * @param direction The direction of the exit.
+     * @param direction The direction of the exit, e.g. "north".
      * @param neighbor  The room to which the exit leads.
+     * @throws IllegalArgumentException if direction is not a direction.
      */
     public void setExit(String direction, Room neighbor) 
     {
-        exits.put(direction, neighbor);
+        Direction found = Direction.find(direction);
+        if (found == null) {
+            throw new IllegalArgumentException("Not a direction: " + direction);
+        }
+        setExit(found, neighbor);
+    }
+
+    /**
+     * Define an exit from this room.
+     * @param direction The direction of the exit.
+     * @param neighbor  The room to which the exit leads.
+     */
+    public void setExit(Direction direction, Room neighbor) 
+    {
+        graph.setExit(id, direction, neighbor.id);
+        changed();
+    }
+
+    /**
+     * Checks if the room has a trap door, open or closed.
+     *
+     * @return true if the room has a trap door, false otherwise.
+     */
+    public boolean hasTrapDoor()
+    {
+        return graph.getTrapDoorTarget(id) != WorldGraph.NO_ROOM;
     }
 
     /**
@@ -53,25 +113,40 @@ public class Room
      *
      * @return true if the room has an open trap door, false otherwise.
      */
-    public boolean hasTrapDoor()
+    public boolean isTrapDoorOpen()
     {
-        return trapDoor.isOpen();
+        return graph.isTrapDoorOpen(id);
     }
 
     /**
-     * Opens the trap door in the room.
+     * Gets the room the trap door leads down to.
+     *
+     * @return The room, or null if this room has no trap door.
+     */
+    public Room getTrapDoorTarget()
+    {
+        int target = graph.getTrapDoorTarget(id);
+        return target != WorldGraph.NO_ROOM ? graph.getRoom(target) : null;
+    }
+
+    /**
+     * Opens the trap door in the room, if it has one.
      */
     public void openTrapDoor()
     {
-        trapDoor.open();
+        if (graph.setTrapDoorOpen(id, true)) {
+            changed();
+        }
     }
 
     /**
-     * Closes the trap door in the room.
+     * Closes the trap door in the room, if it has one.
      */
     public void closeTrapDoor()
     {
-        trapDoor.close();
+        if (graph.setTrapDoorOpen(id, false)) {
+            changed();
+        }
     }
     
     /**
@@ -89,7 +164,7 @@ public class Room
      * @return true if the room contains items, false otherwise.
      */
     public boolean hasItem() {
-        return !items.isEmpty();
+        return graph.getItems(id) != null;
     }
     
     /**
@@ -99,7 +174,8 @@ public class Room
      * @return true if the item is in the room, false otherwise.
      */
     public boolean hasItem(Item item) {
-        return items.contains(item);
+        ItemIndex items = graph.getItems(id);
+        return items != null && items.contains(item);
     }
     
     /**
@@ -109,9 +185,56 @@ public class Room
      * @return true if the item was successfully removed, false otherwise.
      */
     public boolean removeItem(Item item) {
-        return items.remove(item);
+        boolean removed = graph.removeItem(id, item);
+        if (removed) {
+            // The item may already have been given its new place.
+            item.moveLocation(this, null);
+            changed();
+        }
+        return removed;
     }
     
+    /**
+     * Records that a player has come into the room.
+     *
+     * @param player The player.
+     */
+    public void enter(Player player) {
+        graph.addOccupant(id, player);
+    }
+
+    /**
+     * Records that a player has left the room.
+     *
+     * @param player The player.
+     */
+    public void leave(Player player) {
+        graph.removeOccupant(id, player);
+    }
+
+    /**
+     * @return The players in the room. The collection may change while it
+     *         is iterated over.
+     */
+    public Collection<Player> getOccupants() {
+        return Collections.unmodifiableCollection(graph.getOccupants(id));
+    }
+
+    /**
+     * @return The number of players in the room.
+     */
+    public int getOccupantCount() {
+        return graph.getOccupants(id).size();
+    }
+
+    /**
+     * @param player A player.
+     * @return true if the player is in the room.
+     */
+    public boolean hasOccupant(Player player) {
+        return graph.getOccupants(id).contains(player);
+    }
+
     /**
      * Return a description of the room in the form:
      *     You are in the kitchen.
@@ -119,45 +242,236 @@ public class Room
      * @return A long description of this room
      */
     public String getLongDescription() {
-        String itemDescription = "Items in the room:";
-        for (Item item : items) {
-            itemDescription += "\n - " + item.getDescription();
+        Rendered cached = longDescription;
+        int current = version.get();
+        if (cached == null || cached.version != current) {
+            StringBuilder text = new StringBuilder();
+            text.append("You are ").append(description).append(".\n");
+            appendExitString(text);
+            if (hasTrapDoor()) {
+                text.append(isTrapDoorOpen() ? "\nThere is an open trap door in the floor."
+                                             : "\nThere is a closed trap door in the floor.");
+            }
+            text.append("\nItems in the room:");
+            ItemIndex items = graph.getItems(id);
+            if (items != null) {
+                synchronized (items) {
+                    for (Item item : items) {
+                        text.append("\n - ").append(item.getDescription());
+                    }
+                }
+            }
+            // Text rendered while the room changed is stamped with the
+            // version before the change, so it is never used after it.
+            cached = new Rendered(current, text.toString());
+            longDescription = cached;
         }
-        return "You are " + description + ".\n" + getExitString() + "\n" + itemDescription;
+        return cached.text;
     }
 
     /**
-     * Return a string describing the room's exits, for example
-     * "Exits: north west".
-     * @return Details of the room's exits.
+     * Append a string describing the room's exits, for example
+     * "Exits: north west". Exits are always listed in the same order.
+     * @param text The text to append the details of the room's exits to.
      */
-        private String getExitString()
-        {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        for(String exit : keys) {
-            returnString += " " + exit;
-        }
-        return returnString;
+    private void appendExitString(StringBuilder text)
+    {
+        text.append("Exits:");
+        for (Direction direction : Direction.values()) {
+            if (graph.getExit(id, direction) != WorldGraph.NO_ROOM) {
+                text.append(' ').append(direction);
+            }
         }
+    }
+
+    /**
+     * Record that the room has changed, so its description is rendered
+     * again next time it is needed. Called after the change is made.
+     */
+    private void changed()
+    {
+        version.incrementAndGet();
+    }
     
-    public void addItem(Item item) {
-        items.add(item);
+    /**
+     * Puts an item that is nowhere yet in the room. An item placed in a
+     * world for the first time is given an id.
+     *
+     * @param item The item to add.
+     * @return true if the item is in the room now, false if it had been
+     *         put somewhere else in the meantime.
+     */
+    public boolean addItem(Item item) {
+        return addItem(item, null);
+    }
+
+    /**
+     * Puts an item in the room, but only if it is still where the caller
+     * saw it: the item moves with a compare-and-set, as when a player
+     * picks it up, so it cannot end up both here and somewhere else.
+     *
+     * @param item The item to add.
+     * @param from The place the item is expected to be in, or null.
+     * @return true if the item is in the room now, false if it had been
+     *         moved somewhere else in the meantime.
+     */
+    public boolean addItem(Item item, ItemContainer from) {
+        if (item.getId() < 0) {
+            graph.registerItem(item);
+        }
+        // List the item before it becomes the room's, so whoever takes it
+        // from the room finds it to remove; a player who finds it listed
+        // earlier sees it is not here yet and leaves it.
+        graph.addItem(id, item);
+        if (!item.moveLocation(from, this)) {
+            graph.removeItem(id, item);
+            return false;
+        }
+        changed();
+        return true;
+    }
+
+    /**
+     * @return The items in the room, in the order they were put here. The
+     *         collection cannot be changed; use addItem and removeItem instead.
+     */
+    public Collection<Item> getItems() {
+        ItemIndex items = graph.getItems(id);
+        return items != null ? items.asCollection() : Collections.emptyList();
     }
 
-    public List<Item> getItems() {
-        return items;
+    /**
+     * Finds an item in the room by the name a player typed.
+     *
+     * @param name The item's name, in any case.
+     * @return The item, or null if there is no item with that name here.
+     */
+    public Item findItem(String name) {
+        ItemIndex items = graph.getItems(id);
+        return items != null ? items.find(name) : null;
     }
     
+    /**
+     * Finds the exit a player probably meant when they typed a direction
+     * there is no exit in, e.g. "nrth" for "north".
+     *
+     * @param typed The direction the player typed.
+     * @return The closest exit's name, "trapdoor" for a trap door, or null
+     *         if no exit is close enough.
+     */
+    public String suggestExit(String typed) {
+        return getSuggestions().exits.closest(typed);
+    }
+
+    /**
+     * Finds the item a player probably meant when they typed the name of
+     * an item that is not here. Either the whole name or one word of it
+     * may be mistyped, so "mpa" finds the "Map of the campus".
+     *
+     * @param typed The name the player typed.
+     * @return The closest item, or null if no item is close enough.
+     */
+    public Item suggestItem(String typed) {
+        return getSuggestions().items.closest(typed);
+    }
+
+    /**
+     * @return The index of exit and item names, built if it is stale.
+     */
+    private Suggestions getSuggestions() {
+        Suggestions built = suggestions;
+        int current = version.get();
+        if (built == null || built.version != current
+                || built.exitVersion != graph.getExitVersion()) {
+            built = new Suggestions(current, graph.getExitVersion());
+            for (Direction direction : Direction.values()) {
+                if (graph.getExit(id, direction) != WorldGraph.NO_ROOM) {
+                    built.exits.add(direction.toString(), direction.toString());
+                }
+            }
+            if (hasTrapDoor()) {
+                built.exits.add("trapdoor", "trapdoor");
+            }
+            ItemIndex items = graph.getItems(id);
+            if (items != null) {
+                synchronized (items) {
+                    for (Item item : items) {
+                        built.addItem(item);
+                    }
+                }
+            }
+            suggestions = built;
+        }
+        return built;
+    }
+
     /**
      * Return the room that is reached if we go from this room in direction
      * "direction". If there is no room in that direction, return null.
-     * @param direction The exit's direction.
+     * @param direction The exit's direction, or an unambiguous prefix of it.
      * @return The room in the given direction.
      */
     public Room getExit(String direction) 
     {
-        return exits.get(direction);
+        Direction found = Direction.find(direction);
+        return found != null ? getExit(found) : null;
     }
-}
 
+    /**
+     * Return the room that is reached if we go from this room in direction
+     * "direction". If there is no room in that direction, return null.
+     * @param direction The exit's direction.
+     * @return The room in the given direction.
+     */
+    public Room getExit(Direction direction) 
+    {
+        int neighbor = graph.getExit(id, direction);
+        return neighbor != WorldGraph.NO_ROOM ? graph.getRoom(neighbor) : null;
+    }
+
+    /**
+     * The names of a room's exits and items, indexed for suggestions.
+     */
+    private static class Suggestions
+    {
+        private final int version;        // the room's version it was built at
+        private final int exitVersion;    // the map's version the exits were read at
+        private final SuggestionTrie<String> exits;
+        private final SuggestionTrie<Item> items;
+
+        Suggestions(int version, int exitVersion)
+        {
+            this.version = version;
+            this.exitVersion = exitVersion;
+            exits = new SuggestionTrie<>();
+            items = new SuggestionTrie<>();
+        }
+
+        /**
+         * Index an item by its whole name and by the words of it that
+         * find it on their own (see Item.getNameWords).
+         */
+        void addItem(Item item)
+        {
+            items.add(item.getName(), item);
+            for (String word : item.getNameWords()) {
+                items.add(word, item);
+            }
+        }
+    }
+
+    /**
+     * A rendered description and the version of the room it shows.
+     */
+    private static class Rendered
+    {
+        private final int version;
+        private final String text;
+
+        Rendered(int version, String text)
+        {
+            this.version = version;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * RoomEvents tells the players in a room what the others there do:
+ * "Player 7 arrives from the west.", "Player 3 picks up the Map." An
+ * event is not sent to anyone straight away. It is added to the room's
+ * batch, and once per tick each room's batch is handed, as one shared
+ * list, to the inbox of every player in the room. A crowded room of n
+ * players in which m things happen in a tick costs m + n writes, not
+ * m * n. Each player reads their inbox before their next command's
+ * response, skipping what they did themselves.
+ *
+ * Inboxes are bounded (see EventInbox). A player who does not type
+ * anything for a while misses the excess events and is told how many.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class RoomEvents
+{
+    /** How often batches are handed out, in milliseconds. */
+    public static final long TICK_MILLIS = 100;
+    // Every so many ticks, rooms nobody is in are forgotten.
+    private static final int SWEEP_TICKS = 50;
+
+    private WorldGraph graph;
+    private ConcurrentHashMap<Integer, List<Event>> batches;   // by room
+    private ScheduledExecutorService ticker;
+    private AtomicLong published;
+    private AtomicLong deliveries;
+    private int ticks;
+
+    /**
+     * Create the events of a world and start handing them out every tick.
+     * @param graph The rooms of the world.
+     */
+    public RoomEvents(WorldGraph graph)
+    {
+        this.graph = graph;
+        batches = new ConcurrentHashMap<>();
+        published = new AtomicLong();
+        deliveries = new AtomicLong();
+        ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "room-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tell the other players in a room about something that happened.
+     * Nothing is done if nobody else is there.
+     * @param room The room.
+     * @param source The player who did it, or null if the world did it.
+     * @param text What happened, e.g. "Player 7 arrives from the west."
+     */
+    public void publish(Room room, Player source, String text)
+    {
+        if (!isWatched(room, source)) {
+            return;
+        }
+        Event event = new Event(source, text);
+        batches.compute(room.getId(), (id, batch) -> {
+            if (batch == null) {
+                batch = new ArrayList<>(4);
+            }
+            batch.add(event);
+            return batch;
+        });
+        published.incrementAndGet();
+    }
+
+    /**
+     * Check whether anyone would see something happen in a room, so that
+     * the text need not be made up if nobody would.
+     * @param room The room.
+     * @param source The player who does it, or null if the world does it.
+     * @return true if a player other than the source is in the room.
+     */
+    public boolean isWatched(Room room, Player source)
+    {
+        int present = room.getOccupantCount();
+        return present > 1 || present == 1 && (source == null || !room.hasOccupant(source));
+    }
+
+    /**
+     * Hand every room's batch to the players in it. Called every tick;
+     * may also be called directly, e.g. by a test.
+     */
+    public synchronized void tick()
+    {
+        for (Integer room : batches.keySet()) {
+            List<Event> batch = batches.remove(room);
+            if (batch == null) {
+                continue;
+            }
+            int delivered = 0;
+            for (Player player : graph.getRoom(room).getOccupants()) {
+                player.getInbox().offer(batch);
+                delivered++;
+            }
+            deliveries.addAndGet(delivered);
+        }
+        if (++ticks % SWEEP_TICKS == 0) {
+            graph.dropEmptyOccupants();
+        }
+    }
+
+    /**
+     * @return The number of events published so far.
+     */
+    public long getPublished()
+    {
+        return published.get();
+    }
+
+    /**
+     * @return The number of batches handed to inboxes so far.
+     */
+    public long getDeliveries()
+    {
+        return deliveries.get();
+    }
+
+    /**
+     * Stop handing out events.
+     */
+    public void stop()
+    {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * One thing that happened in a room.
+     */
+    public static class Event
+    {
+        private Player source;
+        private String text;
+
+        private Event(Player source, String text)
+        {
+            this.source = source;
+            this.text = text;
+        }
+
+        /**
+         * @return The player who did it.
+         */
+        public Player getSource()
+        {
+            return source;
+        }
+
+        /**
+         * @return What happened.
+         */
+        public String getText()
+        {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A RoomHistory remembers the rooms a player came through, most recent
+ * last, so that "back" can retrace their steps. It holds room ids in a
+ * fixed-size ring: once it is full, each new room pushes out the oldest
+ * one. The history of a session therefore takes the same memory however
+ * long the session runs; a player can go back at most capacity steps.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class RoomHistory
+{
+    private int[] rooms;
+    private int newest;     // index of the most recent room
+    private int size;
+
+    /**
+     * Create an empty history.
+     * @param capacity The most rooms remembered.
+     */
+    public RoomHistory(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        rooms = new int[capacity];
+        newest = capacity - 1;
+    }
+
+    /**
+     * Remember a room the player is leaving. If the history is full, the
+     * oldest room is forgotten.
+     * @param room The room's id.
+     */
+    public void push(int room)
+    {
+        newest = (newest + 1) % rooms.length;
+        rooms[newest] = room;
+        if (size < rooms.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Take the most recent room off the history.
+     * @return The room's id, or WorldGraph.NO_ROOM if the history is empty.
+     */
+    public int pop()
+    {
+        if (size == 0) {
+            return WorldGraph.NO_ROOM;
+        }
+        int room = rooms[newest];
+        newest = (newest + rooms.length - 1) % rooms.length;
+        size--;
+        return room;
+    }
+
+    /**
+     * Take several rooms off the history.
+     * @param steps How many rooms to go back.
+     * @return The id of the room that many steps back, or, if the history
+     *         is shorter, the oldest room; NO_ROOM if it is empty.
+     */
+    public int pop(int steps)
+    {
+        int room = WorldGraph.NO_ROOM;
+        for (int i = 0; i < steps && size > 0; i++) {
+            room = pop();
+        }
+        return room;
+    }
+
+    /**
+     * @param index The position in the history: 0 is the oldest room.
+     * @return The id of the room at that position.
+     */
+    public int get(int index)
+    {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return rooms[(newest - size + 1 + index + rooms.length) % rooms.length];
+    }
+
+    /**
+     * @return The number of rooms remembered.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return true if no rooms are remembered.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return The most rooms remembered.
+     */
+    public int getCapacity()
+    {
+        return rooms.length;
+    }
+
+    /**
+     * Forget all rooms.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+}
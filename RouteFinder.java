@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A RouteFinder answers "what is the shortest way from room A to room B"
+ * for the rooms of a world graph. For each destination that is asked
+ * about, it runs one breadth-first search backwards from the destination
+ * and keeps the result as a next-hop table: for every room, the direction
+ * to take to get one step closer. Later routes to the same destination,
+ * from anywhere, are then just a walk along that table.
+ *
+ * The tables of the most recently used destinations are cached. All of
+ * them are thrown away when any exit in the world changes.
+ *
+ * Tables are built without holding a lock: the cache only holds a lock
+ * while it is looked up, so a session waits for a search only if it asks
+ * for the same destination as one being searched for, and then shares
+ * its result.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class RouteFinder
+{
+    private static final byte NO_HOP = -1;
+    private static final Direction[] directions = Direction.values();
+
+    private WorldGraph graph;
+    private int cacheSize;
+    private volatile Tables tables;     // for the current exits
+
+    /**
+     * Create a route finder for a world graph.
+     * @param graph The graph.
+     * @param cacheSize The number of destinations whose tables are kept.
+     */
+    public RouteFinder(WorldGraph graph, int cacheSize)
+    {
+        this.graph = graph;
+        this.cacheSize = cacheSize;
+        tables = new Tables(graph.getExitVersion() - 1);
+    }
+
+    /**
+     * Find a shortest route between two rooms.
+     * @param start The id of the room to start in.
+     * @param destination The id of the room to get to.
+     * @return The directions to take, in order (empty if start is the
+     *         destination), or null if the destination cannot be reached.
+     */
+    public List<Direction> findRoute(int start, int destination)
+    {
+        byte[] hops = currentTables().nextHopsTo(destination);
+        List<Direction> route = new ArrayList<>();
+        int room = start;
+        while (room != destination) {
+            // A room added, or an exit changed, since the table was built
+            // may not be in it, or lead round in circles.
+            if (room == WorldGraph.NO_ROOM || room >= hops.length || hops[room] == NO_HOP
+                    || route.size() >= hops.length) {
+                return null;
+            }
+            byte hop = hops[room];
+            route.add(directions[hop]);
+            room = graph.getExit(room, directions[hop]);
+        }
+        return route;
+    }
+
+    /**
+     * @return The tables for the exits as they are now, started afresh if
+     *         the exits have changed.
+     */
+    private Tables currentTables()
+    {
+        Tables current = tables;
+        int exitVersion = graph.getExitVersion();
+        if (current.exitVersion != exitVersion) {
+            synchronized (this) {
+                current = tables;
+                if (current.exitVersion != exitVersion) {
+                    current = new Tables(exitVersion);
+                    tables = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Breadth-first search from the destination along reversed exits. A
+     * room reached through the exit "d" from it gets d as its next hop.
+     */
+    private static byte[] search(Reversed reversed, int destination)
+    {
+        int rooms = reversed.from.length - 1;
+        byte[] hops = new byte[rooms];
+        Arrays.fill(hops, NO_HOP);
+        if (destination >= rooms) {
+            return hops;
+        }
+        int[] queue = new int[rooms];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = destination;
+        hops[destination] = 0;
+
+        while (head < tail) {
+            int room = queue[head++];
+            for (int i = reversed.from[room]; i < reversed.from[room + 1]; i++) {
+                int source = reversed.sources[i];
+                if (hops[source] == NO_HOP && source != destination) {
+                    hops[source] = reversed.sourceDirections[i];
+                    queue[tail++] = source;
+                }
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * The next-hop tables built for one version of the exits.
+     */
+    private class Tables
+    {
+        private final int exitVersion;
+        private final LinkedHashMap<Integer, CompletableFuture<byte[]>> nextHops;  // by destination
+        private final CompletableFuture<Reversed> reversed;
+        private final AtomicBoolean reversing;
+
+        Tables(int exitVersion)
+        {
+            this.exitVersion = exitVersion;
+            nextHops = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<byte[]>> eldest)
+                {
+                    return size() > cacheSize;
+                }
+            };
+            reversed = new CompletableFuture<>();
+            reversing = new AtomicBoolean();
+        }
+
+        /**
+         * Get the next-hop table for a destination. The first thread to
+         * ask for it builds it; others asking meanwhile wait for it.
+         */
+        byte[] nextHopsTo(int destination)
+        {
+            CompletableFuture<byte[]> hops;
+            boolean build = false;
+            synchronized (nextHops) {
+                hops = nextHops.get(destination);
+                if (hops == null) {
+                    hops = new CompletableFuture<>();
+                    nextHops.put(destination, hops);
+                    build = true;
+                }
+            }
+            if (build) {
+                try {
+                    hops.complete(search(reversed(), destination));
+                }
+                catch (RuntimeException | Error e) {
+                    hops.completeExceptionally(e);
+                    synchronized (nextHops) {
+                        nextHops.remove(destination, hops);
+                    }
+                    throw e;
+                }
+            }
+            return hops.join();
+        }
+
+        /**
+         * @return The reversed exits, built by the first thread to need them.
+         */
+        private Reversed reversed()
+        {
+            if (reversing.compareAndSet(false, true)) {
+                try {
+                    reversed.complete(new Reversed(graph));
+                }
+                catch (RuntimeException | Error e) {
+                    reversed.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            return reversed.join();
+        }
+    }
+
+    /**
+     * The exits reversed: the rooms with an exit into room r are
+     * sources[from[r]] .. sources[from[r + 1] - 1], with the exits'
+     * directions in sourceDirections.
+     */
+    private static class Reversed
+    {
+        private final int[] from;
+        private final int[] sources;
+        private final byte[] sourceDirections;
+
+        /**
+         * Build the reversed exit table, grouped by the room the exits
+         * lead to.
+         */
+        Reversed(WorldGraph graph)
+        {
+            int rooms = graph.getRoomCount();
+            from = new int[rooms + 1];
+            for (int room = 0; room < rooms; room++) {
+                for (Direction direction : directions) {
+                    int neighbor = graph.getExit(room, direction);
+                    if (neighbor != WorldGraph.NO_ROOM && neighbor < rooms) {
+                        from[neighbor + 1]++;
+                    }
+                }
+            }
+            for (int room = 0; room < rooms; room++) {
+                from[room + 1] += from[room];
+            }
+
+            sources = new int[from[rooms]];
+            sourceDirections = new byte[from[rooms]];
+            int[] next = Arrays.copyOf(from, rooms);
+            for (int room = 0; room < rooms; room++) {
+                for (Direction direction : directions) {
+                    int neighbor = graph.getExit(room, direction);
+                    // An exit added since the rooms were counted is left out.
+                    if (neighbor != WorldGraph.NO_ROOM && neighbor < rooms
+                            && next[neighbor] < from[neighbor + 1]) {
+                        sources[next[neighbor]] = room;
+                        sourceDirections[next[neighbor]++] = (byte) direction.ordinal();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A SessionHost runs many game sessions at once over one shared World.
+ * Every session gets its own thread; where the JVM supports virtual
+ * threads (Java 21 and later) those are used, so thousands of sessions
+ * that are mostly waiting for input cost very little.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class SessionHost
+{
+    private World world;
+    private ExecutorService executor;
+    private AtomicLong commandsProcessed;
+
+    /**
+     * Create a host for sessions played on the given world, and start
+     * the world's clock.
+     * @param world The world shared by all sessions.
+     */
+    public SessionHost(World world)
+    {
+        this.world = world;
+        world.start();
+        executor = newSessionExecutor();
+        commandsProcessed = new AtomicLong();
+    }
+
+    /**
+     * Start a new session in the background.
+     * @param in The stream the player's commands are read from.
+     * @param out The stream the session's output is written to.
+     * @return A future that completes when the player has quit.
+     */
+    public Future<?> startSession(InputStream in, PrintStream out)
+    {
+        return executor.submit(() -> {
+            Game game = new Game(world, in, out);
+            game.play();
+            commandsProcessed.addAndGet(game.getCommandCount());
+        });
+    }
+
+    /**
+     * Run a number of sessions that all play the same script, and wait
+     * for them to finish. Output is discarded.
+     * @param sessions The number of sessions to run.
+     * @param script The commands each session plays, one per line.
+     * @return The throughput in commands per second across all sessions.
+     */
+    public double runScripted(int sessions, String script)
+        throws InterruptedException, ExecutionException
+    {
+        byte[] input = script.getBytes(StandardCharsets.UTF_8);
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        long before = commandsProcessed.get();
+        long start = System.nanoTime();
+
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            running.add(startSession(new ByteArrayInputStream(input), discard));
+        }
+        for (Future<?> session : running) {
+            session.get();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long commands = commandsProcessed.get() - before;
+        return commands * 1e9 / elapsed;
+    }
+
+    /**
+     * @return The total number of commands processed by finished sessions.
+     */
+    public long getCommandsProcessed()
+    {
+        return commandsProcessed.get();
+    }
+
+    /**
+     * Stop accepting new sessions, wait for running ones to finish, and
+     * take the command metrics off JMX.
+     */
+    public void shutdown() throws InterruptedException
+    {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        CommandMetrics.unregister();
+    }
+
+    /**
+     * Create the executor sessions run on: one virtual thread per session
+     * when available, otherwise a pool of platform threads.
+     */
+    static ExecutorService newSessionExecutor()
+    {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            // Virtual threads need Java 21; fall back to platform threads.
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Run a batch of scripted sessions and print the throughput.
+     * @param args Optionally the number of sessions (default 1000).
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            script.append("look\ngo east\ngo west\ngo north\nback\ngo south\n");
+        }
+        script.append("quit\n");
+
+        try (World world = new World()) {
+            SessionHost host = new SessionHost(world);
+            double throughput = host.runScripted(sessions, script.toString());
+            host.shutdown();
+            System.out.printf("%d sessions: %.0f commands/sec%n", sessions, throughput);
+        }
+    }
+}
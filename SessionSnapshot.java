@@ -0,0 +1,252 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A SessionSnapshot saves the state of one game session in a compact
+ * binary form and restores it later, for example after a restart. Rooms
+ * and items are stored by id, so a snapshot is only a few dozen bytes and
+ * must be restored into a session on the same world. A snapshot holds:
+ *
+ *     magic, format version
+ *     current room, room history
+ *     time left on the session's time limit
+ *     the ids of the items the player carries
+ *     items the player dropped or put in bags, with the room or bag each
+ *     was put in
+ *     trap doors the player opened or closed, with their state
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class SessionSnapshot
+{
+    private static final int MAGIC = 0x5A534E50;       // "ZSNP"
+    private static final int FORMAT_VERSION = 2;
+
+    // What an item was put in.
+    private static final int IN_ROOM = 0;
+    private static final int IN_BAG = 1;
+
+    /**
+     * Save a session.
+     * @param game The session.
+     * @return The snapshot.
+     */
+    public static byte[] save(Game game)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            write(game, new DataOutputStream(bytes));
+        }
+        catch (IOException e) {
+            // Writing to memory cannot fail.
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restore a session from a snapshot.
+     * @param game A session on the world the snapshot was taken on.
+     * @param snapshot The snapshot.
+     * @throws IOException if the snapshot is damaged or of an unknown version.
+     */
+    public static void restore(Game game, byte[] snapshot) throws IOException
+    {
+        read(game, new DataInputStream(new ByteArrayInputStream(snapshot)));
+    }
+
+    /**
+     * Write a snapshot of a session.
+     * @param game The session.
+     * @param out Where to write the snapshot.
+     */
+    public static void write(Game game, DataOutput out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+
+        out.writeInt(game.getCurrentRoom().getId());
+        RoomHistory history = game.getRoomHistory();
+        out.writeInt(history.size());
+        for (int i = 0; i < history.size(); i++) {
+            out.writeInt(history.get(i));
+        }
+        out.writeLong(game.getTimer().getRemainingMillis());
+
+        Player player = game.getPlayer();
+        Collection<Item> inventory = player.getInventory();
+        out.writeInt(inventory.size());
+        for (Item item : inventory) {
+            out.writeInt(item.getId());
+        }
+        Map<Item, ItemContainer> placed = player.getPlacedItems();
+        out.writeInt(placed.size());
+        for (Map.Entry<Item, ItemContainer> entry : placed.entrySet()) {
+            out.writeInt(entry.getKey().getId());
+            ItemContainer container = entry.getValue();
+            if (container instanceof Bag) {
+                out.writeByte(IN_BAG);
+                out.writeInt(((Bag) container).getId());
+            }
+            else {
+                out.writeByte(IN_ROOM);
+                out.writeInt(((Room) container).getId());
+            }
+        }
+
+        out.writeInt(game.getChangedTrapDoors().size());
+        for (Room room : game.getChangedTrapDoors()) {
+            out.writeInt(room.getId());
+            out.writeBoolean(room.isTrapDoorOpen());
+        }
+    }
+
+    /**
+     * Read a snapshot into a session, replacing its state. What the
+     * session carries or has put down now is first handed back to where
+     * it was found (see Player.returnItems). Items the snapshot says the
+     * session carried or left somewhere that another player has picked
+     * up since stay with that player.
+     * @param game A session on the world the snapshot was taken on.
+     * @param in Where to read the snapshot from.
+     * @throws IOException if the snapshot is damaged or of an unknown version.
+     */
+    public static void read(Game game, DataInput in) throws IOException
+    {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a session snapshot");
+        }
+        int version = in.readShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        WorldGraph graph = game.getWorld().getGraph();
+        Player player = game.getPlayer();
+        player.returnItems();
+
+        game.setCurrentRoom(room(graph, in.readInt()));
+        RoomHistory history = game.getRoomHistory();
+        history.clear();
+        int historySize = in.readInt();
+        for (int i = 0; i < historySize; i++) {
+            // A longer saved history keeps only its most recent rooms.
+            history.push(room(graph, in.readInt()).getId());
+        }
+        game.restartTimer(in.readLong());
+
+        int carried = in.readInt();
+        for (int i = 0; i < carried; i++) {
+            player.restoreItem(item(graph, in.readInt()));
+        }
+        int placed = in.readInt();
+        for (int i = 0; i < placed; i++) {
+            Item item = item(graph, in.readInt());
+            ItemContainer container;
+            int kind = in.readByte();
+            if (kind == IN_ROOM) {
+                container = room(graph, in.readInt());
+            }
+            else if (kind == IN_BAG) {
+                container = bag(graph, in.readInt());
+            }
+            else {
+                throw new IOException("unknown item container " + kind);
+            }
+
+            if (place(player, item, container)) {
+                player.getPlacedItems().put(item, container);
+            }
+        }
+
+        int trapDoors = in.readInt();
+        for (int i = 0; i < trapDoors; i++) {
+            Room room = room(graph, in.readInt());
+            if (in.readBoolean()) {
+                room.openTrapDoor();
+            }
+            else {
+                room.closeTrapDoor();
+            }
+            game.getChangedTrapDoors().add(room);
+        }
+    }
+
+    /**
+     * Put an item back where a player left it. An item another player
+     * carries stays with them; any other item is taken from where it is
+     * with a compare-and-set, as a player picking it up would.
+     * @return true if the item is where the player left it, false if
+     *         another player has it.
+     * @throws IOException if the item does not fit the bag.
+     */
+    private static boolean place(Player player, Item item, ItemContainer container)
+        throws IOException
+    {
+        while (true) {
+            ItemContainer location = item.getLocation();
+            if (location == container) {
+                return true;
+            }
+            Player carrier = Player.carrierOf(item);
+            if (carrier != null && carrier != player) {
+                return false;
+            }
+            if (!item.moveLocation(location, null)) {
+                continue;   // moved in the meantime; look again
+            }
+            if (location != null) {
+                location.removeItem(item);
+            }
+            if (container instanceof Room) {
+                if (!((Room) container).addItem(item)) {
+                    continue;   // taken in the meantime; look again
+                }
+            }
+            else if (!((Bag) container).putItem(item, null)) {
+                if (item.getLocation() != null) {
+                    continue;
+                }
+                throw new IOException("item " + item.getId() + " does not fit its bag");
+            }
+            return true;
+        }
+    }
+
+    private static Room room(WorldGraph graph, int id) throws IOException
+    {
+        if (id < 0 || id >= graph.getRoomCount()) {
+            throw new IOException("snapshot refers to unknown room " + id);
+        }
+        return graph.getRoom(id);
+    }
+
+    private static Item item(WorldGraph graph, int id) throws IOException
+    {
+        Item item = graph.getItem(id);
+        if (item == null) {
+            throw new IOException("snapshot refers to unknown item " + id);
+        }
+        return item;
+    }
+
+    private static Bag bag(WorldGraph graph, int id) throws IOException
+    {
+        Item item = item(graph, id);
+        if (!(item instanceof Bag)) {
+            throw new IOException("snapshot refers to item " + id + " as a bag");
+        }
+        return (Bag) item;
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A SuggestionTrie maps words to values and finds the word closest to a
+ * word a player mistyped, so that the game can ask "Did you mean 'look'?".
+ * Words are compared ignoring case, by their edit distance: the number
+ * of letters that must be inserted, removed, changed or swapped with
+ * their neighbour to turn one word into the other.
+ *
+ * The words are kept in a trie, which is walked like a Levenshtein
+ * automaton: each node works out one row of the edit distance table from
+ * its parent's row, so words sharing a prefix share the work for it, and
+ * a branch is left as soon as every entry of its row is beyond the
+ * distance still of interest. That distance shrinks to the best found so
+ * far, and the branch spelling what was typed is walked first, so for
+ * the small distances of typos only a sliver of a large trie is visited.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class SuggestionTrie<V>
+{
+    private Node<V> root;
+    private int size;
+    private int longest;    // the length of the longest word
+
+    /**
+     * Create an empty trie.
+     */
+    public SuggestionTrie()
+    {
+        root = new Node<>();
+    }
+
+    /**
+     * Add a word to the trie. A word that is already in the trie keeps
+     * the value it was first added with.
+     * @param word The word. It is stored in lower case.
+     * @param value The value the word maps to.
+     */
+    public void add(String word, V value)
+    {
+        Node<V> node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.childOrCreate(Character.toLowerCase(word.charAt(i)));
+        }
+        if (node.value == null) {
+            node.value = value;
+            size++;
+            longest = Math.max(longest, word.length());
+        }
+    }
+
+    /**
+     * Find the value of the word closest to a word, allowing as many
+     * mistakes as are usual for a word of its length (see tolerance).
+     * @param word The word, in any case.
+     * @return The value of the closest word, or null if no word is close
+     *         enough. Of words equally close, the one that starts most
+     *         like the typed word wins.
+     */
+    public V closest(CharSequence word)
+    {
+        return closest(word, tolerance(word.length()));
+    }
+
+    /**
+     * Find the value of the word closest to a word.
+     * @param word The word, in any case.
+     * @param maxDistance The largest edit distance to accept.
+     * @return The value of the closest word, or null if no word is within
+     *         maxDistance. Of words equally close, the one that starts most
+     *         like the typed word wins.
+     */
+    public V closest(CharSequence word, int maxDistance)
+    {
+        if (size == 0) {
+            return null;
+        }
+        Search<V> search = new Search<>(word, maxDistance, longest);
+        search.visitChildren(root, 0);
+        return search.best != null ? search.best.value : null;
+    }
+
+    /**
+     * @return The number of words in the trie.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The number of mistakes a word of some length can be expected to
+     * have and still be recognised: one in short words like "lok", two
+     * in words like "nroth", three in long item names.
+     * @param length The length of the typed word.
+     * @return The largest edit distance to accept.
+     */
+    public static int tolerance(int length)
+    {
+        if (length <= 4) {
+            return 1;
+        }
+        return length <= 8 ? 2 : 3;
+    }
+
+    /**
+     * One walk of the trie looking for the closest word. Row d of the
+     * table holds the distances between the first d letters of the path
+     * walked and every prefix of the typed word.
+     */
+    private static class Search<V>
+    {
+        private char[] typed;
+        private int[][] rows;
+        private char[] path;
+        private int maxDistance;
+        private Node<V> best;
+        private int bestDistance;
+
+        Search(CharSequence word, int maxDistance, int longest)
+        {
+            typed = new char[word.length()];
+            for (int i = 0; i < typed.length; i++) {
+                typed[i] = Character.toLowerCase(word.charAt(i));
+            }
+            // Deeper than the typed word plus the mistakes allowed, no
+            // word can be close enough.
+            int depth = Math.min(longest, typed.length + maxDistance);
+            rows = new int[depth + 1][];
+            path = new char[depth + 1];
+            rows[0] = new int[typed.length + 1];
+            for (int i = 0; i <= typed.length; i++) {
+                rows[0][i] = i;
+            }
+            this.maxDistance = maxDistance;
+            bestDistance = Integer.MAX_VALUE;
+        }
+
+        /**
+         * Walk the children of a node, the one spelling the next typed
+         * letter first.
+         */
+        void visitChildren(Node<V> node, int depth)
+        {
+            if (depth + 1 >= rows.length) {
+                return;
+            }
+            int likely = -1;
+            if (depth < typed.length) {
+                char next = typed[depth];
+                for (int i = 0; i < node.keys.length; i++) {
+                    if (node.keys[i] == next) {
+                        likely = i;
+                        visit(node.children[i], next, depth + 1);
+                        break;
+                    }
+                }
+            }
+            for (int i = 0; i < node.keys.length; i++) {
+                if (i != likely) {
+                    visit(node.children[i], node.keys[i], depth + 1);
+                }
+            }
+        }
+
+        /**
+         * Work out the row of a node and walk on below it unless nothing
+         * there can be close enough.
+         */
+        private void visit(Node<V> node, char key, int depth)
+        {
+            int n = typed.length;
+            int[] row = rows[depth];
+            if (row == null) {
+                row = rows[depth] = new int[n + 1];
+            }
+            int[] previous = rows[depth - 1];
+            path[depth] = key;
+            row[0] = depth;
+            int rowMin = depth;
+            for (int i = 1; i <= n; i++) {
+                int d = Math.min(Math.min(row[i - 1], previous[i]) + 1,
+                                 previous[i - 1] + (typed[i - 1] == key ? 0 : 1));
+                // Two letters typed the wrong way round count as one mistake.
+                if (depth > 1 && i > 1 && typed[i - 1] == path[depth - 1] && typed[i - 2] == key) {
+                    d = Math.min(d, rows[depth - 2][i - 2] + 1);
+                }
+                row[i] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (node.value != null) {
+                int distance = row[n];
+                if (distance <= maxDistance && distance < bestDistance) {
+                    best = node;
+                    bestDistance = distance;
+                }
+            }
+            // Entries of later rows are never below this row's smallest,
+            // so a row that cannot beat the best so far ends the branch.
+            if (rowMin <= Math.min(maxDistance, bestDistance - 1)) {
+                visitChildren(node, depth);
+            }
+        }
+    }
+
+    /**
+     * One node of the trie. Children are kept in small parallel arrays,
+     * as in WordTrie.
+     */
+    private static class Node<V>
+    {
+        private char[] keys = new char[0];
+        private Node<V>[] children = newArray(0);
+        private V value;        // the value of the word ending here, if any
+
+        private Node<V> childOrCreate(char key)
+        {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            int size = keys.length;
+            char[] newKeys = new char[size + 1];
+            Node<V>[] newChildren = newArray(size + 1);
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(children, 0, newChildren, 0, size);
+            Node<V> node = new Node<>();
+            newKeys[size] = key;
+            newChildren[size] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static <V> Node<V>[] newArray(int size)
+        {
+            return (Node<V>[]) new Node[size];
+        }
+    }
+}
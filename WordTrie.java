@@ -0,0 +1,133 @@
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A WordTrie maps words to values and is matched case-insensitively.
+ * Besides whole words it accepts any prefix that only one word starts
+ * with, so "l" finds "look" as long as no other word begins with "l".
+ * Lookups walk the characters of the input directly and never create a
+ * lower case copy of it.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class WordTrie<V>
+{
+    private Node<V> root;
+
+    /**
+     * Create an empty trie.
+     */
+    public WordTrie()
+    {
+        root = new Node<>();
+    }
+
+    /**
+     * Add a word to the trie.
+     * @param word The word. It is stored in lower case.
+     * @param value The value the word maps to.
+     */
+    public void put(String word, V value)
+    {
+        Node<V> node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node.addPassing(value);
+            node = node.childOrCreate(Character.toLowerCase(word.charAt(i)));
+        }
+        node.addPassing(value);
+        node.value = value;
+    }
+
+    /**
+     * Find the value for a word or an unambiguous prefix of one.
+     * @param word The word to look up.
+     * @return The value, or null if there is none or the prefix is ambiguous.
+     */
+    public V get(CharSequence word)
+    {
+        return get(word, 0, word.length());
+    }
+
+    /**
+     * Find the value for a word or an unambiguous prefix of one, where the
+     * word is part of a longer piece of text.
+     * @param text The text containing the word.
+     * @param start The index of the first character of the word.
+     * @param end The index just after the last character of the word.
+     * @return The value, or null if there is none or the prefix is ambiguous.
+     */
+    public V get(CharSequence text, int start, int end)
+    {
+        if (start >= end) {
+            return null;
+        }
+        Node<V> node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.child(Character.toLowerCase(text.charAt(i)));
+        }
+        if (node == null) {
+            return null;
+        }
+        // An exact word wins over a longer word it is a prefix of.
+        return node.value != null ? node.value : node.only;
+    }
+
+    /**
+     * One node of the trie. Children are kept in small parallel arrays,
+     * since command words and directions branch very little.
+     */
+    private static class Node<V>
+    {
+        private char[] keys = new char[0];
+        private Node<V>[] children = newArray(0);
+        private V value;        // the value of the word ending here, if any
+        private V only;         // the value of the one word passing here
+        private boolean shared; // true if several words pass through here
+
+        private Node<V> child(char key)
+        {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node<V> childOrCreate(char key)
+        {
+            Node<V> node = child(key);
+            if (node == null) {
+                int size = keys.length;
+                char[] newKeys = new char[size + 1];
+                Node<V>[] newChildren = newArray(size + 1);
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                System.arraycopy(children, 0, newChildren, 0, size);
+                node = new Node<>();
+                newKeys[size] = key;
+                newChildren[size] = node;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return node;
+        }
+
+        private void addPassing(V passing)
+        {
+            if (!shared && only == null) {
+                only = passing;
+            }
+            else if (only != passing) {
+                shared = true;
+                only = null;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static <V> Node<V>[] newArray(int size)
+        {
+            return (Node<V>[]) new Node[size];
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The World holds the map of the game: all rooms, their exits and the
+ * items placed in them. A single World is shared by every game session
+ * that is played on it, so the per-player state (current room, history,
+ * inventory) lives in Game and Player, not here.
+ *
+ * The rooms of a world can be split among shards (see WorldShards), so
+ * that sessions in different parts of the map run in parallel.
+ *
+ * Worlds are loaded from world definition files (see WorldLoader). The
+ * default world is the campus described in "campus.world".
+ *
+ * The events and the ticker of a world each run on a thread of their
+ * own. A world that is no longer played on should be closed, which stops
+ * them; a program that makes many worlds, like a benchmark, would
+ * otherwise pile up threads.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class World implements AutoCloseable
+{
+    /** The file the default world is loaded from. */
+    public static final String DEFAULT_WORLD = "campus.world";
+
+    private WorldGraph graph;
+    private Room startRoom;
+    private RouteFinder routes;     // created when first needed
+    private volatile WorldShards shards;    // null unless the world is sharded
+    private RoomEvents events;      // created when first needed
+    private WorldTicker ticker;     // created when first needed
+
+    /**
+     * Create the default world by loading "campus.world", either from the
+     * class path or from the current directory.
+     * @throws UncheckedIOException if the world cannot be loaded.
+     */
+    public World()
+    {
+        World loaded = loadDefault();
+        graph = loaded.graph;
+        startRoom = loaded.startRoom;
+        events = loaded.events;
+        ticker = loaded.ticker;
+    }
+
+    /**
+     * Create a world from a graph of rooms.
+     * @param graph The rooms of the world.
+     * @param startRoom The room in which every new player starts.
+     */
+    public World(WorldGraph graph, Room startRoom)
+    {
+        this.graph = graph;
+        this.startRoom = startRoom;
+    }
+
+    /**
+     * Load a world from a world definition file.
+     * @param file The file to load.
+     * @return The world.
+     * @throws IOException if the file cannot be read or is invalid.
+     */
+    public static World load(Path file) throws IOException
+    {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new WorldLoader(file.toString()).load(in);
+        }
+    }
+
+    /**
+     * @return The room in which every new player starts.
+     */
+    public Room getStartRoom()
+    {
+        return startRoom;
+    }
+
+    /**
+     * @return The graph that stores the rooms of this world.
+     */
+    public WorldGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * @return The route finder for this world's map.
+     */
+    public synchronized RouteFinder getRoutes()
+    {
+        if (routes == null) {
+            routes = new RouteFinder(graph, 64);
+        }
+        return routes;
+    }
+
+    /**
+     * @return What tells the players in each room what the others do.
+     */
+    public synchronized RoomEvents getEvents()
+    {
+        if (events == null) {
+            events = new RoomEvents(graph);
+        }
+        return events;
+    }
+
+    /**
+     * @return What makes the world change between commands: NPCs, items
+     *         that come back and trap doors on a timer.
+     */
+    public synchronized WorldTicker getTicker()
+    {
+        if (ticker == null) {
+            ticker = new WorldTicker(graph, getEvents());
+        }
+        return ticker;
+    }
+
+    /**
+     * Start the world's clock, so that its NPCs wander, items come back
+     * and trap doors swing while it is played. Whoever hosts sessions on
+     * the world starts it once; starting it again does nothing.
+     */
+    public void start()
+    {
+        getTicker().start();
+    }
+
+    /**
+     * @return The shards that run this world's sessions, or null if every
+     *         session runs its commands on its own thread.
+     */
+    public WorldShards getShards()
+    {
+        return shards;
+    }
+
+    /**
+     * Run the commands of sessions started from now on on shards.
+     * @param shards The shards, created for this world's graph, or null
+     *               to run sessions on their own threads again.
+     */
+    public void setShards(WorldShards shards)
+    {
+        this.shards = shards;
+        getTicker().setShards(shards);
+    }
+
+    /**
+     * Stop the world's events and ticker. The world must not be played on
+     * afterwards. Shards set with setShards are shut down by whoever
+     * created them.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (ticker != null) {
+            ticker.stop();
+        }
+        if (events != null) {
+            events.stop();
+        }
+    }
+
+    /**
+     * Load the default world.
+     */
+    private static World loadDefault()
+    {
+        try {
+            InputStream resource = World.class.getResourceAsStream(DEFAULT_WORLD);
+            if (resource == null) {
+                return load(Paths.get(DEFAULT_WORLD));
+            }
+            try (Reader in = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
+                return new WorldLoader(DEFAULT_WORLD).load(in);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
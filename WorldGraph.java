@@ -0,0 +1,563 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The WorldGraph stores the map of a world compactly enough for worlds
+ * with millions of rooms. Every room has an int id. Exits are kept in one
+ * flat int array with a fixed slot per direction, so room r's exit in
+ * direction d is at exits[r * DIRECTIONS + d]. Items and trap doors are
+ * rare, so they live in side tables that only hold an entry for rooms
+ * that actually have them; so do the players, for rooms someone is in
+ * at the moment. A trap door is a one-way exit down to another
+ * room; each one gets a number, and whether it is open is one bit of a
+ * bitmap shared by the whole world.
+ *
+ * Room objects are thin views onto this store. A graph opened from a
+ * compiled world image (see WorldImage) reads its exits straight from
+ * the mapped file and only creates a Room, with its items and trap door,
+ * the first time the room is asked for.
+ *
+ * Rooms and exits are added and changed under the graph's lock, but read
+ * without it: the room and exit tables are volatile, so a reader sees
+ * either the old table or a complete new one, and an exit changed in
+ * place is seen by anyone who has read the new exit version.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class WorldGraph
+{
+    /** The id used for "no room", e.g. where there is no exit. */
+    public static final int NO_ROOM = -1;
+
+    private static final int DIRECTIONS = Direction.values().length;
+    private static final Direction[] directions = Direction.values();
+    // Rooms of an image-backed graph are published to other sessions'
+    // threads through this handle.
+    private static final VarHandle ROOMS = MethodHandles.arrayElementVarHandle(Room[].class);
+    private static final VarHandle ITEMS = MethodHandles.arrayElementVarHandle(Item[].class);
+
+    private volatile int roomCount;
+    private volatile Room[] rooms;
+    private volatile IntBuffer exits;   // DIRECTIONS slots per room
+    private ConcurrentHashMap<Integer, ItemIndex> items;
+    private ConcurrentHashMap<Integer, Collection<Player>> occupants;  // players by room
+    private ConcurrentHashMap<Integer, Integer> trapDoors;     // numbers by room
+    private int trapDoorCount;
+    private int[] trapDoorTargets;              // by trap door number
+    private volatile AtomicLongArray trapDoorsOpen;     // one bit per trap door
+    private int itemCount;
+    private Item[] itemsById;
+    private ItemCatalog catalog;    // search index over the items
+    private final Object catalogLock = new Object();   // held while the image's items are added
+    private volatile boolean imageCataloged;    // whether the image's items are in it
+    private ConcurrentHashMap<String, Integer> roomNames;  // ids by lower case name
+    private final AtomicInteger exitVersion = new AtomicInteger();  // bumped whenever the map changes
+    private WorldImage image;       // source of rooms not created yet, or null
+
+    /**
+     * Create an empty world graph.
+     */
+    public WorldGraph()
+    {
+        this(16);
+    }
+
+    /**
+     * Create an empty world graph with room for a number of rooms.
+     * @param expectedRooms The number of rooms expected; more can be added.
+     */
+    public WorldGraph(int expectedRooms)
+    {
+        rooms = new Room[Math.max(1, expectedRooms)];
+        int[] exitTable = new int[rooms.length * DIRECTIONS];
+        Arrays.fill(exitTable, NO_ROOM);
+        exits = IntBuffer.wrap(exitTable);
+        items = new ConcurrentHashMap<>();
+        occupants = new ConcurrentHashMap<>();
+        trapDoors = new ConcurrentHashMap<>();
+        trapDoorTargets = new int[4];
+        trapDoorsOpen = new AtomicLongArray(1);
+        itemsById = new Item[16];
+        catalog = new ItemCatalog();
+        roomNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Create a graph backed by a compiled world image. Rooms are read
+     * from the image when they are first needed.
+     * @param image The world image.
+     * @param roomCount The number of rooms in the image.
+     * @param itemCount The number of items in the image.
+     * @param exits The exit table of the image.
+     */
+    WorldGraph(WorldImage image, int roomCount, int itemCount, IntBuffer exits)
+    {
+        this.image = image;
+        this.roomCount = roomCount;
+        this.itemCount = itemCount;
+        this.exits = exits;
+        rooms = new Room[Math.max(1, roomCount)];
+        items = new ConcurrentHashMap<>();
+        occupants = new ConcurrentHashMap<>();
+        trapDoors = new ConcurrentHashMap<>();
+        trapDoorTargets = new int[4];
+        trapDoorsOpen = new AtomicLongArray(1);
+        itemsById = new Item[Math.max(1, itemCount)];
+        catalog = new ItemCatalog();
+        roomNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Add a new room without exits.
+     * @param description The room's description.
+     * @return The new room.
+     */
+    public synchronized Room addRoom(String description)
+    {
+        if (roomCount == rooms.length) {
+            grow();
+        }
+        Room room = new Room(this, roomCount, description);
+        ROOMS.setRelease(rooms, roomCount, room);
+        roomCount++;
+        exitVersion.incrementAndGet();
+        return room;
+    }
+
+    /**
+     * @return The number of rooms in the world.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @param id The id of a room.
+     * @return The room with that id.
+     */
+    public Room getRoom(int id)
+    {
+        Room room = (Room) ROOMS.getAcquire(rooms, id);
+        if (room == null && image != null) {
+            room = materialize(id);
+        }
+        return room;
+    }
+
+    /**
+     * Create a room from the world image, unless another thread has
+     * just done so.
+     */
+    private synchronized Room materialize(int id)
+    {
+        Room room = rooms[id];
+        if (room == null) {
+            room = new Room(this, id, null);
+            image.readRoom(this, room);
+            ROOMS.setRelease(rooms, id, room);
+        }
+        return room;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @param direction The direction of an exit.
+     * @return The id of the room the exit leads to, or NO_ROOM.
+     */
+    public int getExit(int room, Direction direction)
+    {
+        return exits.get(room * DIRECTIONS + direction.ordinal());
+    }
+
+    /**
+     * Set or remove an exit of a room.
+     * @param room The id of the room.
+     * @param direction The direction of the exit.
+     * @param neighbor The id of the room the exit leads to, or NO_ROOM.
+     */
+    synchronized void setExit(int room, Direction direction, int neighbor)
+    {
+        if (exits.isReadOnly()) {
+            copyExits(rooms.length);
+        }
+        exits.put(room * DIRECTIONS + direction.ordinal(), neighbor);
+        exitVersion.incrementAndGet();
+    }
+
+    /**
+     * @return A number that changes whenever a room is added or any exit in
+     *         the world changes, so that anything derived from the exits
+     *         can tell it is stale.
+     */
+    public int getExitVersion()
+    {
+        return exitVersion.get();
+    }
+
+    /**
+     * Give a room a name players can refer to it by, e.g. in "travel".
+     * Names are matched ignoring case.
+     * @param name The name.
+     * @param room The room.
+     */
+    public void nameRoom(String name, Room room)
+    {
+        roomNames.put(name.toLowerCase(), room.getId());
+    }
+
+    /**
+     * Find a room by its name, ignoring case.
+     * @param name The room's name.
+     * @return The room, or null if no room has that name.
+     */
+    public Room findRoom(String name)
+    {
+        String key = name.toLowerCase();
+        Integer id = roomNames.get(key);
+        if (id == null && image != null) {
+            int found = image.findRoom(key);
+            id = found != NO_ROOM ? found : null;
+        }
+        return id != null ? getRoom(id) : null;
+    }
+
+    /**
+     * @return The ids of the rooms named with nameRoom, by lower case name.
+     */
+    Map<String, Integer> getRoomNames()
+    {
+        return roomNames;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return The directions the room has exits in.
+     */
+    public List<Direction> getExitDirections(int room)
+    {
+        List<Direction> found = new ArrayList<>(DIRECTIONS);
+        IntBuffer table = exits;
+        int base = room * DIRECTIONS;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            if (table.get(base + d) != NO_ROOM) {
+                found.add(directions[d]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return The items in the room, or null if it has none.
+     */
+    ItemIndex getItems(int room)
+    {
+        return items.get(room);
+    }
+
+    /**
+     * Add an item to a room.
+     */
+    void addItem(int room, Item item)
+    {
+        // Adding and dropping an emptied room's index are atomic per room,
+        // so an item added while the last one is removed is not lost.
+        items.compute(room, (id, index) -> {
+            if (index == null) {
+                index = new ItemIndex();
+            }
+            index.add(item);
+            return index;
+        });
+    }
+
+    /**
+     * Remove an item from a room.
+     * @return true if the item was in the room.
+     */
+    boolean removeItem(int room, Item item)
+    {
+        ItemIndex index = items.get(room);
+        if (index == null || !index.remove(item)) {
+            return false;
+        }
+        if (index.isEmpty()) {
+            // Only dropped if still empty: an add may have got in first.
+            items.computeIfPresent(room, (id, present) -> present.isEmpty() ? null : present);
+        }
+        return true;
+    }
+
+    /**
+     * Add a player to the players in a room.
+     */
+    void addOccupant(int room, Player player)
+    {
+        // Added inside compute, so a set being dropped as empty can't lose it.
+        occupants.compute(room, (id, players) -> {
+            if (players == null) {
+                players = ConcurrentHashMap.newKeySet();
+            }
+            players.add(player);
+            return players;
+        });
+    }
+
+    /**
+     * Remove a player from the players in a room.
+     */
+    void removeOccupant(int room, Player player)
+    {
+        // An emptied set is kept for whoever comes next, until the next
+        // dropEmptyOccupants.
+        Collection<Player> players = occupants.get(room);
+        if (players != null) {
+            players.remove(player);
+        }
+    }
+
+    /**
+     * Forget the player sets of rooms nobody is in any more.
+     */
+    void dropEmptyOccupants()
+    {
+        for (Integer room : occupants.keySet()) {
+            occupants.computeIfPresent(room, (id, players) -> players.isEmpty() ? null : players);
+        }
+    }
+
+    /**
+     * @return The players in a room. The collection may change while it
+     *         is iterated over, but never fails.
+     */
+    Collection<Player> getOccupants(int room)
+    {
+        Collection<Player> players = occupants.get(room);
+        return players != null ? players : Collections.emptySet();
+    }
+
+    /**
+     * @return The number of items in the world.
+     */
+    public int getItemCount()
+    {
+        return itemCount;
+    }
+
+    /**
+     * @param id The id of an item.
+     * @return The item with that id, or null if there is none.
+     */
+    public Item getItem(int id)
+    {
+        if (id < 0 || id >= itemCount) {
+            return null;
+        }
+        Item item = (Item) ITEMS.getAcquire(itemsById, id);
+        if (item == null && image != null) {
+            // Reading the item's room from the image creates the item.
+            getRoom(image.getItemRoom(id));
+            synchronized (this) {
+                item = itemsById[id];
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Give an item the next free id.
+     */
+    void registerItem(Item item)
+    {
+        synchronized (this) {
+            if (itemCount == itemsById.length) {
+                itemsById = Arrays.copyOf(itemsById, itemCount * 2);
+            }
+            registerItem(item, itemCount++);
+        }
+        catalog.add(item.getId(), item.getName(), item.getDescription());
+    }
+
+    /**
+     * Find items by the words of their name and description, e.g. for
+     * "find ring". Where each item is can then be read from the item.
+     * @param query The words to search for; see ItemCatalog.search.
+     * @param limit The most items to return.
+     * @return The matching items, in the order they were added to the world.
+     */
+    public List<Item> findItems(String query, int limit)
+    {
+        int[] ids = getCatalog().search(query, limit);
+        List<Item> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            found.add(getItem(id));
+        }
+        return found;
+    }
+
+    /**
+     * @return The item catalog. The items of a world image are added the
+     *         first time it is needed, without reading their rooms. This
+     *         is done under a lock of its own, so rooms and items can
+     *         still be read from the image meanwhile.
+     */
+    private ItemCatalog getCatalog()
+    {
+        if (image != null && !imageCataloged) {
+            synchronized (catalogLock) {
+                if (!imageCataloged) {
+                    image.catalogItems(catalog);
+                    imageCataloged = true;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Record an item read from a world image under its stored id.
+     */
+    synchronized void registerItem(Item item, int id)
+    {
+        item.setId(id);
+        ITEMS.setRelease(itemsById, id, item);
+    }
+
+    /**
+     * Put a trap door in a room, leading down to another room.
+     * @param room The id of the room.
+     * @param target The id of the room the trap door leads to.
+     * @param open Whether the trap door starts open.
+     * @throws IllegalArgumentException if the room already has a trap door.
+     */
+    public synchronized void addTrapDoor(int room, int target, boolean open)
+    {
+        if (trapDoors.containsKey(room)) {
+            throw new IllegalArgumentException("room " + room + " already has a trap door");
+        }
+        int number = trapDoorCount++;
+        if (number == trapDoorTargets.length) {
+            trapDoorTargets = Arrays.copyOf(trapDoorTargets, number * 2);
+        }
+        if (number / Long.SIZE == trapDoorsOpen.length()) {
+            AtomicLongArray larger = new AtomicLongArray(trapDoorsOpen.length() * 2);
+            for (int i = 0; i < trapDoorsOpen.length(); i++) {
+                larger.set(i, trapDoorsOpen.get(i));
+            }
+            trapDoorsOpen = larger;
+        }
+        trapDoorTargets[number] = target;
+        setOpen(number, open);
+        trapDoors.put(room, number);
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return The id of the room its trap door leads to, or NO_ROOM if it
+     *         has no trap door.
+     */
+    public int getTrapDoorTarget(int room)
+    {
+        Integer number = trapDoors.get(room);
+        if (number == null) {
+            return NO_ROOM;
+        }
+        synchronized (this) {
+            return trapDoorTargets[number];
+        }
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return true if the room has a trap door and it is open.
+     */
+    public boolean isTrapDoorOpen(int room)
+    {
+        Integer number = trapDoors.get(room);
+        return number != null
+            && (trapDoorsOpen.get(number / Long.SIZE) & (1L << number)) != 0;
+    }
+
+    /**
+     * Open or close the trap door of a room.
+     * @param room The id of the room.
+     * @param open true to open it, false to close it.
+     * @return false if the room has no trap door.
+     */
+    public boolean setTrapDoorOpen(int room, boolean open)
+    {
+        Integer number = trapDoors.get(room);
+        if (number == null) {
+            return false;
+        }
+        setOpen(number, open);
+        return true;
+    }
+
+    /**
+     * @return The number of trap doors in the world.
+     */
+    public int getTrapDoorCount()
+    {
+        return trapDoorCount;
+    }
+
+    /**
+     * Set one bit of the open bitmap. If the bitmap was replaced by a
+     * larger copy meanwhile, the bit is set again in the copy.
+     */
+    private void setOpen(int number, boolean open)
+    {
+        AtomicLongArray bits;
+        do {
+            bits = trapDoorsOpen;
+            int word = number / Long.SIZE;
+            long mask = 1L << number;
+            long old;
+            long updated;
+            do {
+                old = bits.get(word);
+                updated = open ? old | mask : old & ~mask;
+            } while (old != updated && !bits.compareAndSet(word, old, updated));
+        } while (bits != trapDoorsOpen);
+    }
+
+    /**
+     * Make room for more rooms. Called with the graph's lock held.
+     */
+    private void grow()
+    {
+        int capacity = rooms.length * 2;
+        rooms = Arrays.copyOf(rooms, capacity);
+        copyExits(capacity);
+    }
+
+    /**
+     * Copy the exit table into a heap array with space for a number of
+     * rooms. This is how a graph opened from a read-only world image gets
+     * an exit table it can change. Called with the graph's lock held.
+     */
+    private void copyExits(int capacity)
+    {
+        int used = roomCount * DIRECTIONS;
+        int[] exitTable = new int[capacity * DIRECTIONS];
+        exits.get(0, exitTable, 0, used);
+        Arrays.fill(exitTable, used, exitTable.length, NO_ROOM);
+        exits = IntBuffer.wrap(exitTable);
+    }
+}
@@ -0,0 +1,424 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * A WorldImage is a world compiled into a binary file that can be mapped
+ * into memory and used straight away, without parsing a world definition
+ * or building all of its rooms. The exit table is used directly from the
+ * mapped file (until the game first changes an exit); a room's
+ * description, items and trap door are read from the image the first
+ * time the room is needed, so rooms no player ever visits cost nothing
+ * but their slot in the exit table.
+ *
+ * The image holds, in order:
+ *
+ *     header     magic, format version, room count, item count,
+ *                start room, number of directions, start of names
+ *     exits      one int per room and direction (WorldGraph layout)
+ *     offsets    one long per room: where its record starts
+ *     item rooms one int per item: the room it lies in
+ *     records    per room: trap door flags (and, if it has a trap door,
+ *                the room it leads to), description, items; a bag's
+ *                record is followed by the records of its contents
+ *     names      the rooms' names in lower case, sorted, so a room can be
+ *                found by name with a binary search of the mapped file
+ *
+ * To compile a world definition into an image, run
+ *     java WorldImage campus.world campus.img
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class WorldImage
+{
+    private static final int MAGIC = 0x5A55554C;       // "ZUUL"
+    private static final int FORMAT_VERSION = 5;
+    private static final int HEADER_SIZE = 7 * Integer.BYTES;
+
+    private static final int HAS_TRAP_DOOR = 1;
+    private static final int TRAP_DOOR_OPEN = 2;
+
+    // Kinds of item record.
+    private static final int PLAIN_ITEM = 0;
+    private static final int BAG = 1;
+
+    private ByteBuffer image;
+    private int roomCount;
+    private int offsetsStart;
+    private int itemRoomsStart;
+    private int namesStart;
+
+    private WorldImage(ByteBuffer image, int roomCount, int offsetsStart, int itemRoomsStart,
+                       int namesStart)
+    {
+        this.image = image;
+        this.roomCount = roomCount;
+        this.offsetsStart = offsetsStart;
+        this.itemRoomsStart = itemRoomsStart;
+        this.namesStart = namesStart;
+    }
+
+    /**
+     * Write a world into an image file.
+     * @param world The world to compile.
+     * @param file The image file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void compile(World world, Path file) throws IOException
+    {
+        WorldGraph graph = world.getGraph();
+        int roomCount = graph.getRoomCount();
+        int itemCount = graph.getItemCount();
+        Direction[] directions = Direction.values();
+        long offsetsStart = HEADER_SIZE + (long) roomCount * directions.length * Integer.BYTES;
+        long itemRoomsStart = offsetsStart + (long) roomCount * Long.BYTES;
+        long recordsStart = itemRoomsStart + (long) itemCount * Integer.BYTES;
+        long[] offsets = new long[roomCount];
+        int[] itemRooms = new int[itemCount];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(roomCount);
+            out.writeInt(itemCount);
+            out.writeInt(world.getStartRoom().getId());
+            out.writeInt(directions.length);
+            out.writeInt(0);    // start of names, filled in at the end
+            for (int room = 0; room < roomCount; room++) {
+                for (Direction direction : directions) {
+                    out.writeInt(graph.getExit(room, direction));
+                }
+            }
+            // Leave space for the offsets and item rooms; they are filled
+            // in at the end.
+            for (long i = offsetsStart; i < recordsStart; i++) {
+                out.writeByte(0);
+            }
+
+            long position = recordsStart;
+            for (int room = 0; room < roomCount; room++) {
+                offsets[room] = position;
+                int before = out.size();
+                writeRoom(out, graph, graph.getRoom(room), itemRooms);
+                position += out.size() - before;
+            }
+            long namesStart = position;
+            position += writeNames(out, graph, namesStart);
+            out.flush();
+            if (position > Integer.MAX_VALUE) {
+                // A mapped buffer cannot be larger than this.
+                throw new IOException("world is too large for one image");
+            }
+
+            ByteBuffer table = ByteBuffer.allocate((int) (recordsStart - offsetsStart));
+            table.asLongBuffer().put(offsets);
+            table.position(roomCount * Long.BYTES);
+            table.asIntBuffer().put(itemRooms);
+            table.position(0);
+            channel.write(table, offsetsStart);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) namesStart), 6 * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Open an image file. Its rooms are read lazily, as players reach them.
+     * @param file The image file.
+     * @return The world stored in the image.
+     * @throws IOException if the file cannot be read or is not a world image.
+     */
+    public static World open(Path file) throws IOException
+    {
+        ByteBuffer image;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (image.getInt(0) != MAGIC) {
+            throw new IOException(file + ": not a world image");
+        }
+        if (image.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(file + ": unsupported image version " + image.getInt(4));
+        }
+        int roomCount = image.getInt(8);
+        int itemCount = image.getInt(12);
+        int startRoom = image.getInt(16);
+        int directions = image.getInt(20);
+        int namesStart = image.getInt(24);
+        if (directions != Direction.values().length) {
+            throw new IOException(file + ": image has " + directions + " directions");
+        }
+
+        int exitsSize = roomCount * directions * Integer.BYTES;
+        IntBuffer exits = image.duplicate().position(HEADER_SIZE).limit(HEADER_SIZE + exitsSize)
+            .slice().asIntBuffer();
+        int offsetsStart = HEADER_SIZE + exitsSize;
+        WorldImage source = new WorldImage(image, roomCount, offsetsStart, offsetsStart + roomCount * Long.BYTES,
+                                           namesStart);
+        WorldGraph graph = new WorldGraph(source, roomCount, itemCount, exits);
+        return new World(graph, graph.getRoom(startRoom));
+    }
+
+    /**
+     * Fill in a room from its record in the image.
+     * @param graph The graph the room belongs to.
+     * @param room The room, which has no description yet.
+     */
+    void readRoom(WorldGraph graph, Room room)
+    {
+        ByteBuffer record = image.duplicate();
+        record.position((int) image.getLong(offsetsStart + room.getId() * Long.BYTES));
+
+        int flags = record.get();
+        if ((flags & HAS_TRAP_DOOR) != 0) {
+            graph.addTrapDoor(room.getId(), record.getInt(), (flags & TRAP_DOOR_OPEN) != 0);
+        }
+        room.setDescription(readString(record));
+        int itemCount = record.getInt();
+        for (int i = 0; i < itemCount; i++) {
+            Item item = readItem(record, graph);
+            graph.addItem(room.getId(), item);
+            item.setLocation(room);
+        }
+    }
+
+    /**
+     * Create an item, and the contents of a bag, from its record.
+     */
+    private static Item readItem(ByteBuffer record, WorldGraph graph)
+    {
+        int id = record.getInt();
+        int kind = record.get();
+        String name = readString(record);
+        String description = readString(record);
+        double weight = record.getDouble();
+        if (kind != BAG) {
+            Item item = new Item(name, description, weight);
+            graph.registerItem(item, id);
+            return item;
+        }
+
+        Bag bag = new Bag(name, description, weight, record.getDouble());
+        graph.registerItem(bag, id);
+        int contents = record.getInt();
+        for (int i = 0; i < contents; i++) {
+            bag.putItem(readItem(record, graph), null);
+        }
+        return bag;
+    }
+
+    /**
+     * Add every item in the image to a catalog, straight from the room
+     * records, without creating the rooms or items.
+     * @param catalog The catalog.
+     */
+    void catalogItems(ItemCatalog catalog)
+    {
+        ByteBuffer record = image.duplicate();
+        for (int room = 0; room < roomCount; room++) {
+            record.position((int) image.getLong(offsetsStart + room * Long.BYTES));
+            if ((record.get() & HAS_TRAP_DOOR) != 0) {
+                record.getInt();                    // trap door target
+            }
+            int descriptionLength = record.getInt();
+            record.position(record.position() + descriptionLength);
+            catalogItems(record, record.getInt(), catalog);
+        }
+    }
+
+    /**
+     * Add a number of item records, and the contents of bags, to a catalog.
+     */
+    private static void catalogItems(ByteBuffer record, int count, ItemCatalog catalog)
+    {
+        for (int i = 0; i < count; i++) {
+            int id = record.getInt();
+            int kind = record.get();
+            String name = readString(record);
+            String description = readString(record);
+            record.getDouble();                     // weight
+            catalog.add(id, name, description);
+            if (kind == BAG) {
+                record.getDouble();                 // capacity
+                catalogItems(record, record.getInt(), catalog);
+            }
+        }
+    }
+
+    /**
+     * @param item The id of an item.
+     * @return The id of the room the item lies in when the world starts.
+     */
+    int getItemRoom(int item)
+    {
+        return image.getInt(itemRoomsStart + item * Integer.BYTES);
+    }
+
+    /**
+     * Find a room by name with a binary search of the name table.
+     * @param name The room's name in lower case.
+     * @return The room's id, or NO_ROOM if no room has that name.
+     */
+    int findRoom(String name)
+    {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = image.getInt(namesStart) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = image.getInt(namesStart + Integer.BYTES * (1 + middle));
+            int order = compareName(entry + Integer.BYTES, key);
+            if (order < 0) {
+                low = middle + 1;
+            }
+            else if (order > 0) {
+                high = middle - 1;
+            }
+            else {
+                return image.getInt(entry);
+            }
+        }
+        return WorldGraph.NO_ROOM;
+    }
+
+    /**
+     * Compare a name stored in the image with a key, byte by byte.
+     */
+    private int compareName(int position, byte[] key)
+    {
+        int length = image.getInt(position);
+        position += Integer.BYTES;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int order = Integer.compare(image.get(position + i) & 0xFF, key[i] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Write the name table: the number of names, the position of each
+     * entry in name order, then the entries (room id and name).
+     * @return The number of bytes written.
+     */
+    private static long writeNames(DataOutputStream out, WorldGraph graph, long start)
+        throws IOException
+    {
+        List<Map.Entry<String, Integer>> names = new ArrayList<>(graph.getRoomNames().entrySet());
+        byte[][] keys = new byte[names.size()][];
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = names.get(i).getKey().getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+        int before = out.size();
+        out.writeInt(keys.length);
+        long entry = start + Integer.BYTES * (1L + keys.length);
+        for (int i : order) {
+            out.writeInt((int) entry);
+            entry += 2 * Integer.BYTES + keys[i].length;
+        }
+        for (int i : order) {
+            out.writeInt(names.get(i).getValue());
+            out.writeInt(keys[i].length);
+            out.write(keys[i]);
+        }
+        return out.size() - before;
+    }
+
+    /**
+     * Write the record of one room, and note which room its items are in.
+     */
+    private static void writeRoom(DataOutputStream out, WorldGraph graph, Room room,
+                                  int[] itemRooms)
+        throws IOException
+    {
+        int target = graph.getTrapDoorTarget(room.getId());
+        if (target == WorldGraph.NO_ROOM) {
+            out.writeByte(0);
+        }
+        else {
+            out.writeByte(HAS_TRAP_DOOR | (graph.isTrapDoorOpen(room.getId()) ? TRAP_DOOR_OPEN : 0));
+            out.writeInt(target);
+        }
+        writeString(out, room.getShortDescription());
+
+        writeItems(out, room.getItems(), room.getId(), itemRooms);
+    }
+
+    /**
+     * Write the number of items and their records, with the contents of
+     * bags after each bag, and note which room the items are in.
+     */
+    private static void writeItems(DataOutputStream out, Collection<Item> items, int room,
+                                   int[] itemRooms)
+        throws IOException
+    {
+        out.writeInt(items.size());
+        for (Item item : items) {
+            itemRooms[item.getId()] = room;
+            out.writeInt(item.getId());
+            out.writeByte(item instanceof Bag ? BAG : PLAIN_ITEM);
+            writeString(out, item.getName());
+            writeString(out, item.getDescription());
+            if (item instanceof Bag) {
+                Bag bag = (Bag) item;
+                out.writeDouble(bag.getEmptyWeight());
+                out.writeDouble(bag.getCapacity());
+                writeItems(out, bag.getContents(), room, itemRooms);
+            }
+            else {
+                out.writeDouble(item.getWeight());
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compile a world definition file into an image.
+     * @param args The definition file and the image file to write.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.out.println("usage: java WorldImage <world definition> <image>");
+            return;
+        }
+        compile(World.load(Paths.get(args[0])), Paths.get(args[1]));
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The WorldLoader reads a world definition file and builds a World from
+ * it. The file is read in one pass, line by line, so only the world
+ * itself is kept in memory, however large the file is. A definition is
+ * made of lines like these:
+ *
+ *     room outside outside the main entrance of the university
+ *     exit outside east theater
+ *     item outside 0.5 Map of the campus | A detailed map of the campus.
+ *     bag outside 0.3 5.0 Satchel | A leather satchel.
+ *     trapdoor pub cellar open
+ *     trapdoor cellar sewer every 30
+ *     npc outside 3 Campus Cat
+ *     respawn outside 10 Map of the campus
+ *     start outside
+ *
+ * A room's id is also its name in the game, e.g. for "travel library".
+ * Blank lines and lines starting with # are ignored. An exit may name a
+ * room that is only declared further down the file. A bag is an item
+ * other items can be put in; its line gives its own weight and then the
+ * most weight it holds. A trap door is a one-way way down to another
+ * room; it starts closed unless its line says "open", and with "every"
+ * it opens and shuts by itself every so many ticks of the world (see
+ * WorldTicker). An NPC wanders through a random exit every so many
+ * ticks. A respawn line makes an item already in a room come back so
+ * many ticks after it was left lying in another room. Repeated strings
+ * (descriptions, item names) are shared rather than stored twice.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class WorldLoader
+{
+    private String source;              // file name, for error messages
+    private int lineNumber;
+    private WorldGraph graph;
+    private HashMap<String, Room> rooms;        // rooms by id
+    private HashMap<String, String> strings;    // interned strings
+    private int undeclared;     // rooms used in exits but not declared yet
+    private Room startRoom;
+    private List<Consumer<WorldTicker>> tickerSetup;  // NPCs, respawns, timers
+
+    /**
+     * Create a loader.
+     * @param source The name of the file being loaded, for error messages.
+     */
+    public WorldLoader(String source)
+    {
+        this.source = source;
+        graph = new WorldGraph();
+        rooms = new HashMap<>();
+        strings = new HashMap<>();
+        tickerSetup = new ArrayList<>();
+    }
+
+    /**
+     * Read a world definition and build the world.
+     * @param in The world definition.
+     * @return The world.
+     * @throws IOException if the definition cannot be read or is invalid.
+     */
+    public World load(Reader in) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            parseLine(line.trim());
+        }
+
+        if (undeclared > 0) {
+            for (Room room : rooms.values()) {
+                if (room.getShortDescription() == null) {
+                    throw error("room '" + findId(room) + "' is used but never declared");
+                }
+            }
+        }
+        if (startRoom == null) {
+            throw error("no start room");
+        }
+        // Ids and interned strings are only needed while loading.
+        rooms = null;
+        strings = null;
+        World world = new World(graph, startRoom);
+        for (Consumer<WorldTicker> setup : tickerSetup) {
+            setup.accept(world.getTicker());
+        }
+        return world;
+    }
+
+    /**
+     * Handle one line of the definition.
+     */
+    private void parseLine(String line) throws IOException
+    {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        int split = wordEnd(line, 0);
+        String keyword = line.substring(0, split);
+        String rest = line.substring(split).trim();
+
+        switch (keyword) {
+            case "room":
+                parseRoom(rest);
+                break;
+            case "exit":
+                parseExit(rest);
+                break;
+            case "item":
+                parseItem(rest, false);
+                break;
+            case "bag":
+                parseItem(rest, true);
+                break;
+            case "trapdoor":
+                parseTrapDoor(rest);
+                break;
+            case "npc":
+                parseNpc(rest);
+                break;
+            case "respawn":
+                parseRespawn(rest);
+                break;
+            case "start":
+                startRoom = roomFor(rest);
+                break;
+            default:
+                throw error("unknown keyword '" + keyword + "'");
+        }
+    }
+
+    /**
+     * room <id> <description>
+     */
+    private void parseRoom(String rest) throws IOException
+    {
+        int split = wordEnd(rest, 0);
+        String id = rest.substring(0, split);
+        String description = rest.substring(split).trim();
+        if (id.isEmpty() || description.isEmpty()) {
+            throw error("expected: room <id> <description>");
+        }
+
+        Room room = rooms.get(id);
+        if (room == null) {
+            room = graph.addRoom(intern(description));
+            rooms.put(id, room);
+            graph.nameRoom(id, room);
+        }
+        else if (room.getShortDescription() == null) {
+            // The room was already used in an exit; fill it in now.
+            room.setDescription(intern(description));
+            graph.nameRoom(id, room);
+            undeclared--;
+        }
+        else {
+            throw error("room '" + id + "' is declared twice");
+        }
+    }
+
+    /**
+     * exit <from> <direction> <to>
+     */
+    private void parseExit(String rest) throws IOException
+    {
+        String[] words = rest.split("\\s+");
+        if (words.length != 3) {
+            throw error("expected: exit <from> <direction> <to>");
+        }
+        Direction direction = Direction.find(words[1]);
+        if (direction == null) {
+            throw error("'" + words[1] + "' is not a direction");
+        }
+        roomFor(words[0]).setExit(direction, roomFor(words[2]));
+    }
+
+    /**
+     * trapdoor <room> <to> [open] [every <ticks>]
+     */
+    private void parseTrapDoor(String rest) throws IOException
+    {
+        String[] words = rest.split("\\s+");
+        int next = 2;
+        boolean open = words.length > next && words[next].equals("open");
+        if (open) {
+            next++;
+        }
+        int ticks = 0;
+        if (words.length == next + 2 && words[next].equals("every")) {
+            ticks = parseTicks(words[next + 1]);
+            next += 2;
+        }
+        if (words.length < 2 || words.length != next) {
+            throw error("expected: trapdoor <room> <to> [open] [every <ticks>]");
+        }
+        Room room = roomFor(words[0]);
+        if (room.hasTrapDoor()) {
+            throw error("room '" + words[0] + "' already has a trap door");
+        }
+        graph.addTrapDoor(room.getId(), roomFor(words[1]).getId(), open);
+        if (ticks > 0) {
+            int every = ticks;
+            tickerSetup.add(ticker -> ticker.addTrapDoorTimer(room, every));
+        }
+    }
+
+    /**
+     * npc <room> <ticks> <name>
+     */
+    private void parseNpc(String rest) throws IOException
+    {
+        int roomEnd = wordEnd(rest, 0);
+        int ticksStart = skipSpaces(rest, roomEnd);
+        int ticksEnd = wordEnd(rest, ticksStart);
+        String name = rest.substring(ticksEnd).trim();
+        if (name.isEmpty()) {
+            throw error("expected: npc <room> <ticks> <name>");
+        }
+        Room room = roomFor(rest.substring(0, roomEnd));
+        int ticks = parseTicks(rest.substring(ticksStart, ticksEnd));
+        String shared = intern(name);
+        tickerSetup.add(ticker -> ticker.addNpc(room, shared, ticks));
+    }
+
+    /**
+     * respawn <room> <ticks> <item name>
+     */
+    private void parseRespawn(String rest) throws IOException
+    {
+        int roomEnd = wordEnd(rest, 0);
+        int ticksStart = skipSpaces(rest, roomEnd);
+        int ticksEnd = wordEnd(rest, ticksStart);
+        String name = rest.substring(ticksEnd).trim();
+        if (name.isEmpty()) {
+            throw error("expected: respawn <room> <ticks> <item name>");
+        }
+        Room room = roomFor(rest.substring(0, roomEnd));
+        int ticks = parseTicks(rest.substring(ticksStart, ticksEnd));
+        Item item = room.findItem(name);
+        if (item == null) {
+            throw error("there is no item '" + name + "' in that room");
+        }
+        tickerSetup.add(ticker -> ticker.addRespawn(room, item, ticks));
+    }
+
+    private int parseTicks(String text) throws IOException
+    {
+        try {
+            int ticks = Integer.parseInt(text);
+            if (ticks > 0) {
+                return ticks;
+            }
+        }
+        catch (NumberFormatException e) {
+            // reported below
+        }
+        throw error("bad number of ticks '" + text + "'");
+    }
+
+    /**
+     * item <room> <weight> <name> | <description>
+     * bag <room> <weight> <capacity> <name> | <description>
+     */
+    private void parseItem(String rest, boolean isBag) throws IOException
+    {
+        int roomEnd = wordEnd(rest, 0);
+        int weightStart = skipSpaces(rest, roomEnd);
+        int weightEnd = wordEnd(rest, weightStart);
+        int capacityStart = skipSpaces(rest, weightEnd);
+        int capacityEnd = isBag ? wordEnd(rest, capacityStart) : weightEnd;
+        int bar = rest.indexOf('|', capacityEnd);
+        if (bar < 0) {
+            throw error(isBag ? "expected: bag <room> <weight> <capacity> <name> | <description>"
+                              : "expected: item <room> <weight> <name> | <description>");
+        }
+
+        double weight = parseWeight(rest.substring(weightStart, weightEnd), "bad item weight");
+        String name = intern(rest.substring(capacityEnd, bar).trim());
+        String description = intern(rest.substring(bar + 1).trim());
+        Item item;
+        if (isBag) {
+            double capacity = parseWeight(rest.substring(capacityStart, capacityEnd), "bad bag capacity");
+            item = new Bag(name, description, weight, capacity);
+        }
+        else {
+            item = new Item(name, description, weight);
+        }
+        roomFor(rest.substring(0, roomEnd)).addItem(item);
+    }
+
+    private double parseWeight(String text, String message) throws IOException
+    {
+        try {
+            return Double.parseDouble(text);
+        }
+        catch (NumberFormatException e) {
+            throw error(message);
+        }
+    }
+
+    /**
+     * Find a room by id. A room that has not been declared yet is created
+     * without a description, which its declaration fills in later.
+     */
+    private Room roomFor(String id) throws IOException
+    {
+        if (id.isEmpty()) {
+            throw error("missing room id");
+        }
+        Room room = rooms.get(id);
+        if (room == null) {
+            room = graph.addRoom(null);
+            rooms.put(id, room);
+            undeclared++;
+        }
+        return room;
+    }
+
+    /**
+     * @return A shared copy of the given string.
+     */
+    private String intern(String text)
+    {
+        String shared = strings.putIfAbsent(text, text);
+        return shared != null ? shared : text;
+    }
+
+    private String findId(Room room)
+    {
+        for (String id : rooms.keySet()) {
+            if (rooms.get(id) == room) {
+                return id;
+            }
+        }
+        return "?";
+    }
+
+    private static int wordEnd(String text, int start)
+    {
+        while (start < text.length() && !Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipSpaces(String text, int start)
+    {
+        while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private IOException error(String message)
+    {
+        return new IOException(source + ":" + lineNumber + ": " + message);
+    }
+}
@@ -0,0 +1,275 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * WorldShards splits the rooms of a world into regions and gives each
+ * region to a shard: a single thread that runs, one after the other,
+ * every command played in that region. Sessions in different regions
+ * run in parallel, and sessions in one region never wait for each other
+ * on a lock.
+ *
+ * The items and trap doors of a room are changed on the thread of the
+ * room's shard: by the commands played there, by commands replayed from
+ * a journal, and by the changes the world makes by itself, which the
+ * WorldTicker posts to the shard. The one exception is restoring a saved
+ * session, which puts items back from the thread that restores it. Items
+ * are still taken with a compare-and-set and bags and item indexes still
+ * lock (see Player.pickUpItem), both for that exception and because a
+ * world need not be sharded; on a sharded world they are not contended.
+ *
+ * A session sends each command to the shard that owns the player's room
+ * and waits for it to be done (see Game.step). When a command takes the
+ * player into another region, the player is handed off: the new shard is
+ * sent a message to let the player arrive and look around, and from then
+ * on the player's commands go to that shard.
+ *
+ * Regions are grown breadth first along the exits, so neighbouring rooms
+ * tend to share a shard and most moves stay inside one. The region of
+ * every room is one byte; rooms added later go to shards in turn.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class WorldShards
+{
+    /** The most shards a world can be split into. */
+    public static final int MAX_SHARDS = 256;
+
+    private Shard[] shards;
+    private byte[] regions;         // the shard of each room
+    private AtomicLong handOffs;
+
+    /**
+     * Split a world into regions and start a shard for each.
+     * @param graph The rooms of the world.
+     * @param count The number of shards, from 1 to MAX_SHARDS.
+     */
+    public WorldShards(WorldGraph graph, int count)
+    {
+        if (count < 1 || count > MAX_SHARDS) {
+            throw new IllegalArgumentException("shard count must be from 1 to " + MAX_SHARDS);
+        }
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i);
+        }
+        regions = partition(graph, count);
+        handOffs = new AtomicLong();
+    }
+
+    /**
+     * Assign rooms to shards, growing each region breadth first from the
+     * lowest room not assigned yet until it holds its share of the rooms.
+     */
+    private static byte[] partition(WorldGraph graph, int count)
+    {
+        int roomCount = graph.getRoomCount();
+        byte[] regions = new byte[roomCount];
+        boolean[] assigned = new boolean[roomCount];
+        int[] queue = new int[roomCount];
+        long share = Math.max(1, (roomCount + count - 1) / count);
+        long done = 0;
+
+        for (int first = 0; first < roomCount; first++) {
+            if (assigned[first]) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = first;
+            assigned[first] = true;
+            while (head < tail) {
+                int room = queue[head++];
+                regions[room] = (byte) (done++ / share);
+                for (Direction direction : Direction.values()) {
+                    int next = graph.getExit(room, direction);
+                    if (next != WorldGraph.NO_ROOM && next < roomCount && !assigned[next]) {
+                        assigned[next] = true;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return The number of the shard that owns the room.
+     */
+    public int shardOf(int room)
+    {
+        return room < regions.length ? regions[room] & 0xFF : room % shards.length;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return true if the current thread is the thread of the room's shard.
+     */
+    public boolean isOwner(int room)
+    {
+        return shards[shardOf(room)].thread == Thread.currentThread();
+    }
+
+    /**
+     * Run a task on the shard that owns a room, and wait for it. A task
+     * sent from the shard's own thread runs straight away.
+     * @param room The id of the room.
+     * @param task The task.
+     * @return What the task returned.
+     */
+    public boolean run(int room, BooleanSupplier task)
+    {
+        Shard shard = shards[shardOf(room)];
+        shard.tasks.incrementAndGet();
+        if (shard.thread == Thread.currentThread()) {
+            return task.getAsBoolean();
+        }
+        FutureTask<Boolean> future = new FutureTask<>(task::getAsBoolean);
+        shard.executor.execute(future);
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for shard " + shard.number);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Send a task to the shard that owns a room without waiting for it,
+     * e.g. a change the world makes by itself (see WorldTicker). A task
+     * sent from the shard's own thread runs straight away.
+     * @param room The id of the room.
+     * @param task The task.
+     */
+    public void post(int room, Runnable task)
+    {
+        Shard shard = shards[shardOf(room)];
+        shard.tasks.incrementAndGet();
+        if (shard.thread == Thread.currentThread()) {
+            task.run();
+        }
+        else {
+            shard.executor.execute(task);
+        }
+    }
+
+    /**
+     * Hand a player off to the shard of the room they have moved into,
+     * and run the arrival there.
+     * @param room The id of the room the player moved into.
+     * @param arrival What happens when the player arrives.
+     */
+    public void handOff(int room, BooleanSupplier arrival)
+    {
+        handOffs.incrementAndGet();
+        run(room, arrival);
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    /**
+     * @param shard The number of a shard.
+     * @return The number of tasks that shard has run.
+     */
+    public long getTasks(int shard)
+    {
+        return shards[shard].tasks.get();
+    }
+
+    /**
+     * @return The number of times a player was handed off to another shard.
+     */
+    public long getHandOffs()
+    {
+        return handOffs.get();
+    }
+
+    /**
+     * @param shard The number of a shard.
+     * @return The number of rooms in that shard's region.
+     */
+    public int getRegionSize(int shard)
+    {
+        int size = 0;
+        for (byte region : regions) {
+            if ((region & 0xFF) == shard) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Stop the shards once they have run the tasks already sent to them.
+     */
+    public void shutdown() throws InterruptedException
+    {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        for (Shard shard : shards) {
+            shard.executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        long[] tasks = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            tasks[i] = getTasks(i);
+        }
+        return shards.length + " shards, tasks " + Arrays.toString(tasks) + ", "
+            + getHandOffs() + " hand-offs";
+    }
+
+    /**
+     * One shard: a thread and the queue of tasks it runs.
+     */
+    private static class Shard
+    {
+        private int number;
+        private ExecutorService executor;
+        private volatile Thread thread;
+        private AtomicLong tasks;
+
+        Shard(int number)
+        {
+            this.number = number;
+            tasks = new AtomicLong();
+            executor = Executors.newSingleThreadExecutor(task -> {
+                Thread created = new Thread(task, "shard-" + number);
+                created.setDaemon(true);
+                thread = created;
+                return created;
+            });
+        }
+    }
+}
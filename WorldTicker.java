@@ -0,0 +1,545 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is part of the "World of Zuul" application.
+ * "World of Zuul" is a very simple, text based adventure game.
+ *
+ * The WorldTicker makes the world change by itself, at a fixed rate of
+ * one tick per TICK_MILLIS: characters that are not players (NPCs)
+ * wander along the exits, items left lying in other rooms go back where
+ * they belong, and trap doors on a timer open and shut.
+ *
+ * Only rooms where something can happen are looked at: each has an
+ * entry in a table of active rooms, and a tick splits that table into
+ * chunks and runs them in parallel on the common ForkJoin pool. Rooms
+ * are handled on their own, so a tick needs no locks. The parallel part
+ * only decides what happens; the NPCs that decide to move are moved
+ * afterwards, one after the other, and changes to the items and trap
+ * doors of rooms are sent to the shards that own those rooms (see
+ * WorldShards), like the commands of players. Anything that happens is
+ * told to the players in the room (see RoomEvents).
+ *
+ * The ticker keeps a histogram of how long ticks take and counts the
+ * ticks that took longer than TICK_MILLIS (overruns), the sign that the
+ * world has grown too large for its tick.
+ *
+ * @author  Omar Malik
+ * @version 2023.10.21
+ */
+public class WorldTicker
+{
+    /** The time between ticks, in milliseconds. */
+    public static final long TICK_MILLIS = 1000;
+    // The most rooms one ForkJoin task handles without splitting.
+    private static final int ROOMS_PER_TASK = 64;
+
+    private WorldGraph graph;
+    private RoomEvents events;
+    private ConcurrentHashMap<Integer, Activity> active;   // by room
+    private volatile WorldShards shards;                     // null if not sharded
+    private volatile ScheduledExecutorService scheduler;    // null until started
+    // Written by tick only, read by anyone without waiting for a tick.
+    private volatile long tickCount;
+    private volatile long overruns;
+    private volatile int lastActiveRooms;
+    private LatencyHistogram tickNanos;
+
+    /**
+     * Create a ticker for a world. It does nothing until it is started.
+     * @param graph The rooms of the world.
+     * @param events Tells the players what happens.
+     */
+    public WorldTicker(WorldGraph graph, RoomEvents events)
+    {
+        this.graph = graph;
+        this.events = events;
+        active = new ConcurrentHashMap<>();
+        tickNanos = new LatencyHistogram();
+    }
+
+    /**
+     * Start ticking, if the ticker has not been started yet.
+     */
+    public void start()
+    {
+        if (scheduler == null) {
+            startScheduler();
+        }
+    }
+
+    private synchronized void startScheduler()
+    {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "world-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop ticking.
+     */
+    public synchronized void stop()
+    {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Make changes to rooms on the shards that own them from now on.
+     * @param shards The world's shards, or null to make changes on the
+     *               ticker's own thread.
+     */
+    public void setShards(WorldShards shards)
+    {
+        this.shards = shards;
+    }
+
+    /**
+     * Put an NPC in a room.
+     * @param room The room.
+     * @param name The NPC's name, e.g. "Campus Cat".
+     * @param moveTicks The NPC moves on through a random exit every this
+     *                  many ticks.
+     * @return The NPC.
+     */
+    public synchronized Npc addNpc(Room room, String name, int moveTicks)
+    {
+        Npc npc = new Npc(name, moveTicks, room.getId());
+        activity(room.getId()).npcs.add(npc);
+        return npc;
+    }
+
+    /**
+     * Make an item come back to its room when it has been left lying in
+     * another room for some time. An item a player carries, or that is
+     * in a bag, stays where it is. The item itself comes back, so it
+     * keeps its id.
+     * @param room The room the item belongs in.
+     * @param item The item, which must be in the world.
+     * @param ticks How many ticks it takes to come back.
+     */
+    public synchronized void addRespawn(Room room, Item item, int ticks)
+    {
+        activity(room.getId()).respawns.add(new Respawn(item, ticks));
+    }
+
+    /**
+     * Open and shut the trap door of a room on a timer.
+     * @param room The room, which must have a trap door.
+     * @param ticks The door opens or shuts every this many ticks.
+     * @throws IllegalArgumentException if the room has no trap door.
+     */
+    public synchronized void addTrapDoorTimer(Room room, int ticks)
+    {
+        if (!room.hasTrapDoor()) {
+            throw new IllegalArgumentException("room " + room.getId() + " has no trap door");
+        }
+        activity(room.getId()).trapDoorTicks = ticks;
+    }
+
+    /**
+     * @param room A room.
+     * @return The NPCs in it.
+     */
+    public Collection<Npc> getNpcs(Room room)
+    {
+        Activity activity = active.get(room.getId());
+        return activity != null ? activity.npcView : Collections.emptySet();
+    }
+
+    /**
+     * Run one tick: let every active room do what it does, in parallel,
+     * then move the NPCs that went somewhere else. Called by the
+     * scheduler; may also be called directly, e.g. by a benchmark.
+     */
+    public synchronized void tick()
+    {
+        long start = System.nanoTime();
+        Activity[] rooms = active.values().toArray(new Activity[0]);
+        ConcurrentLinkedQueue<Npc> moving = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+        long tick = tickCount + 1;
+        ForkJoinPool.commonPool().invoke(new TickTask(rooms, 0, rooms.length, tick, moving, changes));
+
+        for (Npc npc : moving) {
+            move(npc);
+        }
+        for (Change change : changes) {
+            onOwner(change.room, change.task);
+        }
+        for (Activity activity : rooms) {
+            if (activity.isIdle()) {
+                active.remove(activity.room, activity);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        tickNanos.record(elapsed);
+        if (elapsed > TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS)) {
+            overruns++;
+        }
+        lastActiveRooms = rooms.length;
+        tickCount = tick;
+    }
+
+    /**
+     * Move an NPC from the room it was in to the one it chose.
+     */
+    private void move(Npc npc)
+    {
+        Room from = graph.getRoom(npc.room);
+        Room to = graph.getRoom(npc.destination);
+        active.get(npc.room).npcs.remove(npc);
+        activity(npc.destination).npcs.add(npc);
+        npc.room = npc.destination;
+        if (events.isWatched(from, null)) {
+            events.publish(from, null, "The " + npc.name + " wanders off to the " + npc.way + ".");
+        }
+        if (events.isWatched(to, null)) {
+            events.publish(to, null, "The " + npc.name + " wanders in from the "
+                                     + npc.way.opposite() + ".");
+        }
+    }
+
+    /**
+     * Run a change to a room on the shard that owns it, without waiting,
+     * or straight away if the world is not sharded.
+     */
+    private void onOwner(int room, Runnable task)
+    {
+        WorldShards owner = shards;
+        if (owner != null) {
+            owner.post(room, task);
+        }
+        else {
+            task.run();
+        }
+    }
+
+    /**
+     * Take an item back from the room it was left in to the room it
+     * belongs in. Runs on the shard of the room it was left in; nothing
+     * happens if a player has picked it up in the meantime.
+     */
+    private void bringBack(Respawn respawn, Room from, Room home)
+    {
+        Item item = respawn.item;
+        // Claim the item first, so a player picking it up wins or loses
+        // the same race as against another player.
+        if (!item.moveLocation(from, null)) {
+            return;
+        }
+        from.removeItem(item);
+        if (events.isWatched(from, null)) {
+            events.publish(from, null, respawn.goneText);
+        }
+        onOwner(home.getId(), () -> {
+            // A snapshot being restored may have taken it meanwhile.
+            if (home.addItem(item) && events.isWatched(home, null)) {
+                events.publish(home, null, respawn.appearText);
+            }
+        });
+    }
+
+    /**
+     * Open the trap door of a room if it is shut, or shut it if it is
+     * open. Runs on the shard of the room.
+     */
+    private void swingTrapDoor(Room room)
+    {
+        if (room.isTrapDoorOpen()) {
+            room.closeTrapDoor();
+            events.publish(room, null, "The trap door swings shut.");
+        }
+        else {
+            room.openTrapDoor();
+            events.publish(room, null, "The trap door swings open.");
+        }
+    }
+
+    /**
+     * @return The activity of a room, created if it has none.
+     */
+    private Activity activity(int room)
+    {
+        return active.computeIfAbsent(room, Activity::new);
+    }
+
+    /**
+     * @return The number of ticks so far.
+     */
+    public long getTickCount()
+    {
+        return tickCount;
+    }
+
+    /**
+     * @return The number of ticks that took longer than TICK_MILLIS.
+     */
+    public long getOverruns()
+    {
+        return overruns;
+    }
+
+    /**
+     * @return How long ticks took, in nanoseconds.
+     */
+    public LatencyHistogram getTickNanos()
+    {
+        return tickNanos;
+    }
+
+    /**
+     * @return A short report of the ticks, for the "stats" command.
+     */
+    public String getReport()
+    {
+        return String.format("World ticks: %d, %d active rooms, p50 %.2f ms, p99 %.2f ms, %d overruns",
+                             tickCount, lastActiveRooms, tickNanos.getPercentile(50) / 1e6,
+                             tickNanos.getPercentile(99) / 1e6, overruns);
+    }
+
+    /**
+     * Tick a range of rooms, splitting it in two while it is large.
+     */
+    private class TickTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private Activity[] rooms;
+        private int from;
+        private int to;
+        private long tick;
+        private ConcurrentLinkedQueue<Npc> moving;
+        private ConcurrentLinkedQueue<Change> changes;
+
+        TickTask(Activity[] rooms, int from, int to, long tick, ConcurrentLinkedQueue<Npc> moving,
+                 ConcurrentLinkedQueue<Change> changes)
+        {
+            this.rooms = rooms;
+            this.from = from;
+            this.to = to;
+            this.tick = tick;
+            this.moving = moving;
+            this.changes = changes;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > ROOMS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TickTask(rooms, from, middle, tick, moving, changes),
+                          new TickTask(rooms, middle, to, tick, moving, changes));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                tickRoom(rooms[i], tick, moving, changes);
+            }
+        }
+    }
+
+    /**
+     * Decide what one room does in a tick. Nothing is changed here: NPCs
+     * that move go into moving, and changes to rooms into changes.
+     */
+    private void tickRoom(Activity activity, long tick, Collection<Npc> moving,
+                          Collection<Change> changes)
+    {
+        Room room = graph.getRoom(activity.room);
+        for (Npc npc : activity.npcs) {
+            if (tick % npc.moveTicks == 0) {
+                List<Direction> exits = graph.getExitDirections(activity.room);
+                if (!exits.isEmpty()) {
+                    npc.way = exits.get(npc.random.nextInt(exits.size()));
+                    npc.destination = graph.getExit(activity.room, npc.way);
+                    moving.add(npc);
+                }
+            }
+        }
+        for (Respawn respawn : activity.respawns) {
+            ItemContainer location = respawn.item.getLocation();
+            if (location == room || !(location instanceof Room)) {
+                respawn.countdown = respawn.ticks;  // home, or in someone's hands
+            }
+            else if (--respawn.countdown <= 0) {
+                Room from = (Room) location;
+                changes.add(new Change(from.getId(), () -> bringBack(respawn, from, room)));
+                respawn.countdown = respawn.ticks;
+            }
+        }
+        if (activity.trapDoorTicks > 0 && tick % activity.trapDoorTicks == 0) {
+            changes.add(new Change(activity.room, () -> swingTrapDoor(room)));
+        }
+    }
+
+    /**
+     * What can happen in one room.
+     */
+    private static class Activity
+    {
+        private int room;
+        // Changed only between ticks; players may read it at any time.
+        private List<Npc> npcs;
+        private Collection<Npc> npcView;
+        private List<Respawn> respawns;
+        private int trapDoorTicks;      // 0 if the trap door has no timer
+
+        Activity(int room)
+        {
+            this.room = room;
+            npcs = new CopyOnWriteArrayList<>();
+            npcView = Collections.unmodifiableCollection(npcs);
+            respawns = new ArrayList<>(1);
+        }
+
+        boolean isIdle()
+        {
+            return npcs.isEmpty() && respawns.isEmpty() && trapDoorTicks == 0;
+        }
+    }
+
+    /**
+     * A character that is not a player.
+     */
+    public static class Npc
+    {
+        private String name;
+        private String hereText;
+        private int moveTicks;
+        private volatile int room;
+        private Random random;
+        // Chosen during a tick, used when the NPC is moved after it.
+        private int destination;
+        private Direction way;
+
+        private Npc(String name, int moveTicks, int room)
+        {
+            this.name = name;
+            hereText = "The " + name + " is here.";
+            this.moveTicks = Math.max(1, moveTicks);
+            this.room = room;
+            random = new Random(name.hashCode() ^ room);
+        }
+
+        /**
+         * @return The NPC's name.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return What players in the room see, e.g. "The Cat is here."
+         */
+        public String getHereText()
+        {
+            return hereText;
+        }
+
+        /**
+         * @return The id of the room the NPC is in.
+         */
+        public int getRoom()
+        {
+            return room;
+        }
+    }
+
+    /**
+     * An item that comes back to its room.
+     */
+    private static class Respawn
+    {
+        private Item item;
+        private String goneText;
+        private String appearText;
+        private int ticks;
+        private int countdown;
+
+        Respawn(Item item, int ticks)
+        {
+            this.item = item;
+            goneText = "The " + item.getName() + " fades away.";
+            appearText = "The " + item.getName() + " appears.";
+            this.ticks = ticks;
+            countdown = ticks;
+        }
+    }
+
+    /**
+     * A change a tick makes to a room, and the room whose shard makes it.
+     */
+    private static class Change
+    {
+        private int room;
+        private Runnable task;
+
+        Change(int room, Runnable task)
+        {
+            this.room = room;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Measure ticks of a grid of rooms with many NPCs wandering about.
+     * @param args Optionally the side of the grid (default 300, so 90,000
+     *             rooms), the number of NPCs (default 100,000) and the
+     *             number of ticks (default 50).
+     */
+    public static void main(String[] args)
+    {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int npcs = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        WorldGraph graph = new WorldGraph(side * side);
+        for (int i = 0; i < side * side; i++) {
+            graph.addRoom("in room " + i);
+        }
+        for (int i = 0; i < side * side; i++) {
+            Room room = graph.getRoom(i);
+            if (i % side < side - 1) {
+                room.setExit(Direction.EAST, graph.getRoom(i + 1));
+                graph.getRoom(i + 1).setExit(Direction.WEST, room);
+            }
+            if (i + side < side * side) {
+                room.setExit(Direction.SOUTH, graph.getRoom(i + side));
+                graph.getRoom(i + side).setExit(Direction.NORTH, room);
+            }
+        }
+        RoomEvents events = new RoomEvents(graph);
+        WorldTicker ticker = new WorldTicker(graph, events);
+        Random random = new Random(0);
+        for (int i = 0; i < npcs; i++) {
+            ticker.addNpc(graph.getRoom(random.nextInt(side * side)), "Rat " + i, 1 + i % 3);
+        }
+        for (int i = 0; i < ticks; i++) {
+            ticker.tick();
+        }
+        events.stop();
+        System.out.printf("%d rooms, %d NPCs, %d ForkJoin workers%n",
+                          side * side, npcs, ForkJoinPool.commonPool().getParallelism());
+        System.out.println(ticker.getReport());
+    }
+}